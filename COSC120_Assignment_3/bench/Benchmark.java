@@ -0,0 +1,123 @@
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.ref.Reference;
+import java.util.Locale;
+import java.util.function.Supplier;
+
+/**
+ * A small benchmark harness. Each benchmark is run for a number of warm-up iterations so the JIT compiler can settle,
+ * then for a number of measured iterations. For the measured iterations it reports the time per operation along with
+ * the memory allocated and the garbage collection work done per operation.
+ *
+ * Allocation is read from the JVM's per-thread allocation counters, summed over every live thread, so work handed to
+ * other threads (e.g. the parallel parser) is included as long as those threads are still alive when it is measured.
+ */
+public class Benchmark {
+
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+    // Results are folded into this field so the JIT compiler cannot discard the work being measured.
+    private static volatile int sink;
+
+    private final int warmupIterations;
+    private final int measuredIterations;
+
+    public Benchmark(int warmupIterations, int measuredIterations) {
+        this.warmupIterations = warmupIterations;
+        this.measuredIterations = measuredIterations;
+    }
+
+    /**
+     * The purpose of this method is to print the column headings for the rows printed by run.
+     */
+    public static void printHeader(){
+        System.out.printf(Locale.ROOT, "%-40s %14s %14s %14s %8s %8s%n", "Benchmark", "ns/op", "min ns/op", "B/op", "GCs", "GC ms");
+    }
+
+    /**
+     * The purpose of this method is to measure an operation and print a row of results.
+     * @param name the name of the benchmark.
+     * @param operationsPerIteration how many times the operation is run in each iteration.
+     * @param operation the work to measure. Its result is consumed so the work cannot be optimised away.
+     */
+    public void run(String name, int operationsPerIteration, Supplier<?> operation){
+        for(int i = 0; i < warmupIterations; i++) iterate(operationsPerIteration, operation);
+
+        long gcCountBefore = gcCount();
+        long gcMillisBefore = gcMillis();
+        long allocatedBefore = allocatedBytes();
+        long totalNanos = 0;
+        long minNanos = Long.MAX_VALUE;
+        for(int i = 0; i < measuredIterations; i++){
+            long nanos = iterate(operationsPerIteration, operation);
+            totalNanos += nanos;
+            minNanos = Math.min(minNanos, nanos);
+        }
+        long allocated = allocatedBytes()-allocatedBefore;
+        long operations = (long) measuredIterations*operationsPerIteration;
+
+        System.out.printf(Locale.ROOT, "%-40s %14.1f %14.1f %14.1f %8d %8d%n", name,
+                (double) totalNanos/operations, (double) minNanos/operationsPerIteration, (double) allocated/operations,
+                gcCount()-gcCountBefore, gcMillis()-gcMillisBefore);
+    }
+
+    /**
+     * The purpose of this method is to measure how much heap a data structure keeps alive once it is built, by collecting
+     * garbage before and after building it. The figure is approximate, as the collector may not free everything it could.
+     * @param build builds the data structure.
+     * @return the growth in used heap, in bytes, while the data structure is still reachable.
+     */
+    public static long retainedBytes(Supplier<?> build){
+        long before = usedAfterGc();
+        Object built = build.get();
+        long after = usedAfterGc();
+        Reference.reachabilityFence(built);
+        return after-before;
+    }
+
+    /**
+     * The purpose of this method is to collect garbage until the used heap stops shrinking, since a single collection
+     * can leave some garbage behind.
+     * @return the used heap, in bytes.
+     */
+    private static long usedAfterGc(){
+        Runtime runtime = Runtime.getRuntime();
+        long used = Long.MAX_VALUE;
+        for(int i = 0; i < 10; i++){
+            System.gc();
+            long collected = runtime.totalMemory()-runtime.freeMemory();
+            if(collected>=used) break;
+            used = collected;
+        }
+        return used;
+    }
+
+    private static long iterate(int operations, Supplier<?> operation){
+        int hash = 0;
+        long start = System.nanoTime();
+        for(int i = 0; i < operations; i++) hash += System.identityHashCode(operation.get());
+        long nanos = System.nanoTime()-start;
+        sink += hash;
+        return nanos;
+    }
+
+    private static long allocatedBytes(){
+        if(!(THREADS instanceof com.sun.management.ThreadMXBean threads) || !threads.isThreadAllocatedMemorySupported()) return 0;
+        long total = 0;
+        for(long bytes: threads.getThreadAllocatedBytes(THREADS.getAllThreadIds())) if(bytes>0) total += bytes;
+        return total;
+    }
+
+    private static long gcCount(){
+        long total = 0;
+        for(GarbageCollectorMXBean gc: ManagementFactory.getGarbageCollectorMXBeans()) total += Math.max(0, gc.getCollectionCount());
+        return total;
+    }
+
+    private static long gcMillis(){
+        long total = 0;
+        for(GarbageCollectorMXBean gc: ManagementFactory.getGarbageCollectorMXBeans()) total += Math.max(0, gc.getCollectionTime());
+        return total;
+    }
+}
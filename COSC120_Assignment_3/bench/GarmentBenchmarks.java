@@ -0,0 +1,131 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Stream;
+
+/**
+ * Benchmarks for loading, searching and displaying the inventory, run over a synthetic catalog.
+ * These are the baseline figures that every performance change is compared against.
+ *
+ * Build and run from the project directory, e.g.:
+ *   javac -d out/bench src/*.java bench/*.java
+ *   java -cp out/bench GarmentBenchmarks size=100000 selectivity=0.05
+ *
+ * Options, all optional: size (garments in the catalog), selectivity (fraction of garments the search matches),
+ * brands (number of brands), seed, warmups and iterations. The number of threads a broad search is split across is
+ * set with -Djava.util.concurrent.ForkJoinPool.common.parallelism=N, and defaults to one less than the number of cores.
+ *
+ * To include the vectorised scan kernel, compile the vector folder too and add the incubating module to both commands:
+ *   javac --add-modules jdk.incubator.vector -d out/bench src/*.java vector/*.java bench/*.java
+ *   java --add-modules jdk.incubator.vector -cp out/bench GarmentBenchmarks
+ */
+public class GarmentBenchmarks {
+
+    private static final Set<Filter> hoodieFeatures = new LinkedHashSet<>(Arrays.asList(Filter.HOODIE_STYLE, Filter.POCKET_TYPE));
+
+    public static void main(String[] args) throws IOException {
+        Map<String,String> options = parseOptions(args);
+        int size = Integer.parseInt(options.getOrDefault("size", "100000"));
+        double selectivity = Double.parseDouble(options.getOrDefault("selectivity", "0.05"));
+        int brands = Integer.parseInt(options.getOrDefault("brands", "50"));
+        long seed = Long.parseLong(options.getOrDefault("seed", "42"));
+        Benchmark benchmark = new Benchmark(Integer.parseInt(options.getOrDefault("warmups", "5")),
+                Integer.parseInt(options.getOrDefault("iterations", "10")));
+
+        SyntheticCatalog catalog = new SyntheticCatalog(size, selectivity, brands, seed);
+        List<Garment> garments = catalog.getGarments();
+        Inventory inventory = new Inventory();
+        inventory.addGarments(garments);
+        GarmentSpecs query = SyntheticCatalog.benchmarkQuery();
+        Path inventoryFile = Files.createTempFile("inventory", ".txt");
+        catalog.writeInventoryFile(inventoryFile);
+        Path ordersDirectory = Files.createTempDirectory("orders");
+        OrderJournal orderJournal = OrderJournal.open(ordersDirectory, OrderJournal.Sync.ALWAYS);
+        Geek geek = new Geek("Benchmark Geek", 412345678, "geek@example.com", "Benchmark order");
+
+        // Orders for one garment in a hundred, spread over the last 30 days.
+        PopularityTracker popularity = new PopularityTracker(null, PopularityTracker.DEFAULT_HALF_LIFE_DAYS);
+        Random random = new Random(seed);
+        for(int i = 0; i < size/100; i++){
+            popularity.recordOrder(garments.get(random.nextInt(size)), Instant.now().minusSeconds(random.nextInt(30*24*60*60)));
+        }
+        MatchList matches = inventory.findMatch(query);
+
+        // A catalog where most garments share the same few values, searched for a rare value combined with common ones.
+        List<Garment> skewedGarments = SyntheticCatalog.skewed(size, brands, seed).getGarments();
+        Inventory skewedInventory = new Inventory();
+        skewedInventory.addGarments(skewedGarments);
+        GarmentSpecs skewedQuery = SyntheticCatalog.skewedQuery();
+
+        System.out.println("Catalog: "+size+" garments, "+brands+" brands, selectivity "+selectivity
+                +" ("+inventory.findMatch(query).size()+" matches; skewed catalog "+skewedInventory.findMatch(skewedQuery).size()+" matches)");
+        // The garments as objects, against the same garments held in an inventory's columnar segments.
+        long garmentBytes = Benchmark.retainedBytes(() -> new SyntheticCatalog(size, selectivity, brands, seed).getGarments());
+        long inventoryBytes = Benchmark.retainedBytes(() -> {
+            Inventory retained = new Inventory();
+            retained.addGarments(new SyntheticCatalog(size, selectivity, brands, seed).getGarments());
+            return retained;
+        });
+        System.out.printf(Locale.ROOT, "Heap retained: %.1f MB as Garment objects, %.1f MB in an Inventory%n",
+                garmentBytes/1e6, inventoryBytes/1e6);
+        Benchmark.printHeader();
+        try {
+            benchmark.run("GarmentSearcher.loadInventory", 1, () -> GarmentSearcher.loadInventory(inventoryFile.toString()));
+            benchmark.run("Inventory.findMatch", 10, () -> inventory.findMatch(query));
+            benchmark.run("Inventory.findMatch first page of 20", 100, () -> inventory.findMatch(query, 0, 20));
+            benchmark.run("Inventory.findMatch skewed", 10, () -> skewedInventory.findMatch(skewedQuery));
+            // Every hoodie, which is too many garments for the index to narrow, so every garment is checked.
+            GarmentSpecs broadQuery = new GarmentSpecs(Map.of(Filter.GARMENT_TYPE, GarmentType.HOODIE), 0, 1000);
+            inventory.setParallelScan(Integer.MAX_VALUE, Inventory.DEFAULT_SPLIT_THRESHOLD);
+            benchmark.run("Inventory.findMatch broad, 1 thread", 10, () -> inventory.findMatch(broadQuery));
+            inventory.setParallelScan(0, Inventory.DEFAULT_SPLIT_THRESHOLD);
+            benchmark.run("Inventory.findMatch broad, pool of "+ForkJoinPool.commonPool().getParallelism(), 10, () -> inventory.findMatch(broadQuery));
+            inventory.setParallelScan(Inventory.DEFAULT_PARALLEL_THRESHOLD, Inventory.DEFAULT_SPLIT_THRESHOLD);
+            // Only common values at any price, none selective enough to look up in the index, so each segment is scanned,
+            // either garment by garment through the price index or by the vectorised kernel.
+            GarmentSpecs commonQuery = new GarmentSpecs(Map.of(Filter.GARMENT_TYPE, GarmentType.HOODIE, Filter.MATERIAL, Material.COTTON,
+                    Filter.SIZE, EnumSet.of(Size.M), Filter.POCKET_TYPE, PocketType.KANGAROO), 0, 1000);
+            skewedInventory.setVectorScan(false);
+            benchmark.run("Inventory.findMatch scan, scalar", 10, () -> skewedInventory.findMatch(commonQuery));
+            skewedInventory.setVectorScan(true);
+            if(skewedInventory.isVectorScanAvailable()){
+                benchmark.run("Inventory.findMatch scan, vector", 10, () -> skewedInventory.findMatch(commonQuery));
+            }
+            int[] next = {0};
+            benchmark.run("GarmentSpecs.matches", size, () -> query.matches(garments.get(next[0]++ % size).getGarmentSpecs()));
+            benchmark.run("GarmentSpecs.matches skewed", size, () -> skewedQuery.matches(skewedGarments.get(next[0]++ % size).getGarmentSpecs()));
+            GarmentMatcher plannedMatcher = skewedInventory.plan(skewedQuery).getMatcher();
+            benchmark.run("GarmentSpecs.matches skewed, planned", size, () -> plannedMatcher.matchesSpecs(skewedGarments.get(next[0]++ % size).getGarmentSpecs()));
+            benchmark.run("Inventory.findByProductCode", size, () -> inventory.findByProductCode(garments.get(next[0]++ % size).getProductCode()));
+            benchmark.run("Inventory.getAllBrands", 100, inventory::getAllBrands);
+            benchmark.run("PopularityTracker.rank", 10, () -> popularity.rank(matches));
+            benchmark.run("Garment.getGarmentInformation", size, () -> garments.get(next[0]++ % size).getGarmentInformation(hoodieFeatures));
+            benchmark.run("OrderJournal 1000 orders (sync ALWAYS)", 1, () -> {
+                CompletableFuture<Instant> last = null;
+                for(int i = 0; i < 1000; i++) last = orderJournal.submit(geek, garments.get(next[0]++ % size));
+                return last.join();
+            });
+        }finally {
+            orderJournal.close();
+            Files.deleteIfExists(inventoryFile);
+            try(Stream<Path> orderFiles = Files.list(ordersDirectory)){
+                for(Path orderFile: orderFiles.toList()) Files.delete(orderFile);
+            }
+            Files.delete(ordersDirectory);
+        }
+    }
+
+    private static Map<String,String> parseOptions(String[] args){
+        Map<String,String> options = new HashMap<>();
+        for(String arg: args){
+            int equals = arg.indexOf('=');
+            if(equals<0) throw new IllegalArgumentException("Expected option=value but found \""+arg+"\"");
+            options.put(arg.substring(0, equals), arg.substring(equals+1));
+        }
+        return options;
+    }
+}
@@ -0,0 +1,170 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.function.IntSupplier;
+
+/**
+ * A generated catalog of garments for benchmarking. A chosen fraction of the garments (the selectivity) match the
+ * catalog's benchmark query, a cotton hoodie in size M, and the rest are guaranteed not to, so the number of results
+ * a search returns can be controlled. The same seed always generates the same catalog.
+ *
+ * A skewed catalog instead has a few very common values and some rare ones, as real catalogs do: almost every garment
+ * is a hoodie, most are cotton and come in size M, but faux pockets are rare. Its query combines the common values with
+ * the rare one, so the order the filters are checked in matters.
+ */
+public class SyntheticCatalog {
+
+    private final List<Garment> garments = new ArrayList<>();
+    private final List<String> lines = new ArrayList<>();
+    private final Random random;
+
+    /**
+     * @param size the number of garments to generate.
+     * @param selectivity the fraction of the garments, from 0 to 1, that match the benchmark query.
+     * @param brands the number of different brands to spread the garments over.
+     * @param seed the seed for the random choices.
+     */
+    public SyntheticCatalog(int size, double selectivity, int brands, long seed) {
+        this(seed);
+        for(int i = 0; i < size; i++){
+            boolean matching = random.nextDouble() < selectivity;
+            GarmentType type = matching || random.nextBoolean() ? GarmentType.HOODIE : GarmentType.T_SHIRT;
+            Material material = Material.values()[random.nextInt(3)];
+            Set<Size> sizes = EnumSet.noneOf(Size.class);
+            for(Size s: Size.values()) if(random.nextInt(3)==0) sizes.add(s);
+            if(matching){
+                material = Material.COTTON;
+                sizes.add(Size.M);
+            }
+            else if(type==GarmentType.HOODIE){
+                // Rule the garment out on either its material or its sizes.
+                if(random.nextBoolean()) material = Material.values()[1+random.nextInt(2)];
+                else sizes.remove(Size.M);
+            }
+            if(sizes.isEmpty()) sizes.add(Size.XS);
+            addGarment(i, type, material, sizes, () -> random.nextInt(brands), null);
+        }
+    }
+
+    private SyntheticCatalog(long seed) {
+        random = new Random(seed);
+    }
+
+    /**
+     * The purpose of this method is to generate a catalog with skewed values. 95% of the garments are hoodies, 80% are
+     * cotton, 70% come in size M and 1% of the hoodies have faux pockets, most of the rest having kangaroo pockets.
+     * A few brands take most of the garments.
+     * @param size the number of garments to generate.
+     * @param brands the number of different brands to spread the garments over.
+     * @param seed the seed for the random choices.
+     * @return the generated catalog.
+     */
+    public static SyntheticCatalog skewed(int size, int brands, long seed){
+        SyntheticCatalog catalog = new SyntheticCatalog(seed);
+        Random random = catalog.random;
+        for(int i = 0; i < size; i++){
+            GarmentType type = random.nextDouble() < 0.95 ? GarmentType.HOODIE : GarmentType.T_SHIRT;
+            Material material = random.nextDouble() < 0.8 ? Material.COTTON : Material.values()[1+random.nextInt(2)];
+            Set<Size> sizes = EnumSet.noneOf(Size.class);
+            if(random.nextDouble() < 0.7) sizes.add(Size.M);
+            sizes.add(Size.values()[random.nextInt(Size.values().length)]);
+            double pockets = random.nextDouble();
+            PocketType pocketType = pockets < 0.01 ? PocketType.FAUX : pockets < 0.7 ? PocketType.KANGAROO
+                    : PocketType.values()[1+random.nextInt(3)];
+            catalog.addGarment(i, type, material, sizes, () -> {
+                double b = random.nextDouble();
+                return (int) (brands*b*b*b);
+            }, pocketType);
+        }
+        return catalog;
+    }
+
+    /**
+     * The purpose of this method is to generate the rest of a garment's details and add it to the catalog.
+     * @param brandNumber chooses the number of the garment's brand.
+     * @param pocketType the pocket type of a hoodie, or null to choose one at random.
+     */
+    private void addGarment(int i, GarmentType type, Material material, Set<Size> sizes, IntSupplier brandNumber, PocketType pocketType){
+        String name = "Garment "+i;
+        long productCode = 100000000L+i;
+        double price = (1000+random.nextInt(9000))/100.0;
+        String brand = "Brand "+brandNumber.getAsInt();
+        String description = "Graphic text: \"Garment "+i+"\". A generated garment for benchmarking.";
+
+        Map<Filter,Object> filterMap = new LinkedHashMap<>();
+        filterMap.put(Filter.GARMENT_TYPE,type);
+        filterMap.put(Filter.BRAND,brand);
+        filterMap.put(Filter.MATERIAL,material);
+        filterMap.put(Filter.SIZE,sizes);
+        String neckline = "NA", sleeve = "NA", pocket = "NA", style = "NA";
+        if(type==GarmentType.HOODIE){
+            if(pocketType==null) pocketType = PocketType.values()[random.nextInt(PocketType.values().length-1)];
+            HoodieStyle hoodieStyle = HoodieStyle.values()[random.nextInt(HoodieStyle.values().length-1)];
+            filterMap.put(Filter.POCKET_TYPE,pocketType);
+            filterMap.put(Filter.HOODIE_STYLE,hoodieStyle);
+            pocket = pocketType.name();
+            style = hoodieStyle.name();
+        }
+        else {
+            Neckline necklineType = Neckline.values()[random.nextInt(Neckline.values().length-1)];
+            SleeveType sleeveType = SleeveType.values()[random.nextInt(SleeveType.values().length-1)];
+            filterMap.put(Filter.NECKLINE,necklineType);
+            filterMap.put(Filter.SLEEVE_TYPE,sleeveType);
+            neckline = necklineType.name();
+            sleeve = sleeveType.name();
+        }
+        garments.add(new Garment(name,productCode,price,description,new GarmentSpecs(filterMap)));
+
+        StringJoiner sizeList = new StringJoiner(",","[","]");
+        for(Size s: sizes) sizeList.add(s.name());
+        lines.add(String.join(",", type.name(), name, String.valueOf(productCode), String.valueOf(price), brand,
+                material.name(), neckline, sleeve, pocket, style)+","+sizeList+",["+description+"]");
+    }
+
+    public List<Garment> getGarments() {
+        return garments;
+    }
+
+    /**
+     * The purpose of this method is to build the query that matches the chosen fraction of the garments.
+     * @return a search for cotton hoodies in size M at any price.
+     */
+    public static GarmentSpecs benchmarkQuery(){
+        Map<Filter,Object> filterMap = new HashMap<>();
+        filterMap.put(Filter.GARMENT_TYPE,GarmentType.HOODIE);
+        filterMap.put(Filter.MATERIAL,Material.COTTON);
+        filterMap.put(Filter.SIZE,EnumSet.of(Size.M));
+        return new GarmentSpecs(filterMap, 0, 1000);
+    }
+
+    /**
+     * The purpose of this method is to build the query for a skewed catalog, which combines its most common values with
+     * its rare faux pockets. About 0.6% of the garments match.
+     * @return a search for cotton hoodies with faux pockets in size M at any price.
+     */
+    public static GarmentSpecs skewedQuery(){
+        Map<Filter,Object> filterMap = new HashMap<>();
+        filterMap.put(Filter.GARMENT_TYPE,GarmentType.HOODIE);
+        filterMap.put(Filter.MATERIAL,Material.COTTON);
+        filterMap.put(Filter.SIZE,EnumSet.of(Size.M));
+        filterMap.put(Filter.POCKET_TYPE,PocketType.FAUX);
+        return new GarmentSpecs(filterMap, 0, 1000);
+    }
+
+    /**
+     * The purpose of this method is to write the catalog in the format of the inventory file.
+     * @param path the file to write.
+     * @throws IOException if the file cannot be written.
+     */
+    public void writeInventoryFile(Path path) throws IOException {
+        try(BufferedWriter writer = Files.newBufferedWriter(path)){
+            writer.write("type,name,product code,price,brand,material,neckline,sleeve,pocket,style,sizes,description");
+            for(String line: lines){
+                writer.newLine();
+                writer.write(line);
+            }
+        }
+    }
+}
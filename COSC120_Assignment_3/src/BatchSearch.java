@@ -0,0 +1,144 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.stream.IntStream;
+
+/**
+ * Runs a file of searches against the inventory without a display and writes the matches of each one, reporting how many
+ * searches were run per second. Searches are run in parallel, a block at a time, and their results written in file order.
+ *
+ * Each line of the query file is one search, written as filter=value pairs separated by semicolons, e.g.
+ *   garment_type=hoodie; material=cotton; size=M,L; brand=YodaHoods,Lacoder; price=20-60
+ * Filter names and enum values are not case-sensitive and may use spaces or dashes for underscores. Several values
+ * separated by commas match a garment with any of them. Blank lines and lines starting with # are skipped.
+ *
+ * Each line of the results file is the query's line number, the number of matches and the matching product codes,
+ * separated by tabs.
+ */
+public class BatchSearch {
+
+    // The number of searches run in parallel before their results are written.
+    private static final int QUERIES_PER_BLOCK = 1024;
+
+    /**
+     * Usage: java BatchSearch [query file] [results file] [inventory file]
+     * @param args the query file to read, the results file to write and the inventory to search, defaulting to ./queries.txt,
+     *             ./results.txt and ./inventory.txt. An inventory ending in .catalog is opened as a compiled catalog.
+     */
+    public static void main(String[] args) throws IOException {
+        Path queryPath = Path.of(args.length>0 ? args[0] : "./queries.txt");
+        Path resultsPath = Path.of(args.length>1 ? args[1] : "./results.txt");
+        Path inventoryPath = Path.of(args.length>2 ? args[2] : "./inventory.txt");
+
+        SearchService searchService = inventoryPath.toString().endsWith(".catalog")
+                ? new SearchService(Inventory.openCatalog(inventoryPath)) : SearchService.load(inventoryPath);
+
+        List<Integer> lineNumbers = new ArrayList<>();
+        List<GarmentSpecs> queries = new ArrayList<>();
+        try(BufferedReader reader = Files.newBufferedReader(queryPath)){
+            String line;
+            for(int lineNumber = 1; (line = reader.readLine())!=null; lineNumber++){
+                if(line.isBlank() || line.strip().startsWith("#")) continue;
+                lineNumbers.add(lineNumber);
+                queries.add(parseQuery(line, lineNumber));
+            }
+        }
+
+        long matches = 0;
+        long start = System.nanoTime();
+        try(BufferedWriter writer = Files.newBufferedWriter(resultsPath)){
+            for(int from = 0; from < queries.size(); from += QUERIES_PER_BLOCK){
+                int to = Math.min(from+QUERIES_PER_BLOCK, queries.size());
+                List<MatchList> results = IntStream.range(from, to).parallel()
+                        .mapToObj(i -> searchService.search(queries.get(i))).toList();
+                for(int i = from; i < to; i++){
+                    MatchList result = results.get(i-from);
+                    matches += result.size();
+                    writer.write(lineNumbers.get(i)+"\t"+result.size()+"\t");
+                    for(int g = 0; g < result.size(); g++){
+                        if(g>0) writer.write(',');
+                        writer.write(Long.toString(result.getProductCode(g)));
+                    }
+                    writer.newLine();
+                }
+            }
+        }
+        double seconds = (System.nanoTime()-start)/1e9;
+        System.out.printf(Locale.ROOT, "Ran %d searches in %.3f s (%.0f searches per second), %d matches written to %s%n",
+                queries.size(), seconds, queries.size()/seconds, matches, resultsPath);
+        System.out.println("Result cache: "+searchService.getCache().getHits()+" hits, "+searchService.getCache().getMisses()+" misses");
+    }
+
+    /**
+     * The purpose of this method is to turn one line of a query file into search criteria.
+     * @param line the text of the line.
+     * @param lineNumber the line's position in the file, used in error messages.
+     * @return the search described by the line. Without a price range, any price matches.
+     * @throws IllegalArgumentException if the line cannot be parsed.
+     */
+    public static GarmentSpecs parseQuery(String line, int lineNumber){
+        Map<Filter,Object> filterMap = new EnumMap<>(Filter.class);
+        double minPrice = 0;
+        double maxPrice = Double.MAX_VALUE;
+        for(String criterion: line.split(";")){
+            if(criterion.isBlank()) continue;
+            int equals = criterion.indexOf('=');
+            if(equals<0) throw error(lineNumber, "expected filter=value but found \""+criterion.strip()+"\"");
+            String key = token(criterion.substring(0, equals));
+            String value = criterion.substring(equals+1).strip();
+            if(key.equals("PRICE")){
+                int dash = value.indexOf('-');
+                try {
+                    minPrice = Double.parseDouble(value.substring(0, Math.max(dash, 0)));
+                    maxPrice = Double.parseDouble(value.substring(dash+1));
+                }catch (NumberFormatException | StringIndexOutOfBoundsException n){
+                    throw error(lineNumber, "expected price=min-max but found \""+value+"\"");
+                }
+                continue;
+            }
+            Filter filter;
+            try {
+                filter = Filter.valueOf(key);
+            }catch (IllegalArgumentException e){
+                throw error(lineNumber, "unrecognised filter \""+criterion.substring(0, equals).strip()+"\"");
+            }
+            filterMap.put(filter, parseValues(filter, value, lineNumber));
+        }
+        return new GarmentSpecs(filterMap, minPrice, maxPrice);
+    }
+
+    /**
+     * @return a Set of brands, a Set of sizes, or for other filters a single enum value or a Set of several.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static Object parseValues(Filter filter, String value, int lineNumber){
+        String[] tokens = value.split(",");
+        if(!filter.isEnumValued()){
+            Set<String> values = new LinkedHashSet<>();
+            for(String t: tokens) values.add(t.strip());
+            return values;
+        }
+        Class type = filter.getValueType();
+        Set values = EnumSet.noneOf(type);
+        for(String t: tokens){
+            try {
+                values.add(Enum.valueOf(type, token(t)));
+            }catch (IllegalArgumentException e){
+                throw error(lineNumber, "unrecognised "+filter.name().toLowerCase(Locale.ROOT).replace('_',' ')+" \""+t.strip()+"\"");
+            }
+        }
+        if(filter==Filter.SIZE || values.size()>1) return values;
+        return values.iterator().next();
+    }
+
+    private static String token(String text){
+        return text.strip().toUpperCase(Locale.ROOT).replace(' ','_').replace('-','_');
+    }
+
+    private static IllegalArgumentException error(int lineNumber, String message){
+        return new IllegalArgumentException("Error in query file on line "+lineNumber+". \nError message: "+message);
+    }
+}
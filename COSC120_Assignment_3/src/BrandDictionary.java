@@ -0,0 +1,68 @@
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Gives every brand name a small int id, so that a garment holds its brand as an int and checking a garment's brand
+ * against a search is an integer comparison rather than a string comparison. Ids are never reused or removed, so they
+ * stay valid across inventory reloads. Looking up a name or an id never locks; only adding a new brand does.
+ */
+public class BrandDictionary {
+
+    private static final Map<String,Integer> ids = new ConcurrentHashMap<>();
+    // Brand names indexed by id. Replaced by a larger copy when it fills up, and only then published.
+    private static volatile String[] names = new String[64];
+    private static volatile int size;
+
+    private BrandDictionary() {
+    }
+
+    /**
+     * The purpose of this method is to look up a brand's id, giving the brand a new id if it does not have one yet.
+     * @param brand the brand name.
+     * @return the brand's id.
+     */
+    public static int idOf(String brand){
+        Integer id = ids.get(brand);
+        return id!=null ? id : add(brand);
+    }
+
+    /**
+     * The purpose of this method is to look up a brand's id without giving it one, e.g. for a brand typed into a search,
+     * so that searching for brands no garment has does not grow the dictionary.
+     * @param brand the brand name.
+     * @return the brand's id, or -1 if it does not have one.
+     */
+    public static int find(String brand){
+        Integer id = ids.get(brand);
+        return id!=null ? id : -1;
+    }
+
+    /**
+     * @return the number of brands with an id. A brand given an id later gets an id at least this large.
+     */
+    public static int size(){
+        return size;
+    }
+
+    private static synchronized int add(String brand){
+        Integer existing = ids.get(brand);
+        if(existing!=null) return existing;
+        String[] current = names;
+        if(size==current.length) current = Arrays.copyOf(current, size*2);
+        int id = size++;
+        current[id] = brand;
+        names = current;
+        // Only hand out the id once its name can be read.
+        ids.put(brand, id);
+        return id;
+    }
+
+    /**
+     * @param id a brand id returned by idOf.
+     * @return the brand's name.
+     */
+    public static String nameOf(int id){
+        return names[id];
+    }
+}
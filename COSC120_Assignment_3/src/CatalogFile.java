@@ -0,0 +1,550 @@
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.function.IntPredicate;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * A binary, column-oriented copy of the inventory file that is memory-mapped and searched in place.
+ * Garment objects are only created for the garments that are read, so opening a catalog does not parse anything
+ * and does not use heap in proportion to the number of garments. The filter statistics used to plan searches and the
+ * product code index are worked out when the catalog is compiled and stored in it too, so neither the first search nor
+ * the first lookup has to read every garment.
+ *
+ * Layout (all columns hold one entry per garment, in the order the garments were compiled):
+ *   header      magic, version, garment count, string count, brand count, code slots (6 ints)
+ *   specified   byte  - a bit per Filter ordinal, set if the garment has a value for that filter
+ *   enums       byte  - one column per single-valued enum filter, holding the enum ordinal
+ *   sizes       short - bitmask of Size ordinals
+ *   brand       int   - string id of the brand
+ *   name        int   - string id of the name
+ *   description int   - string id of the description
+ *   price       long  - price in cents
+ *   code        long  - product code
+ *   brands      int   - string ids of the distinct brands (brand count entries)
+ *   brand counts int  - the number of garments of each of those brands (brand count entries)
+ *   specified counts int - the number of garments with any value for each filter (one entry per Filter)
+ *   value counts int  - the number of garments holding each value of each enum-valued filter, filter by filter in Filter
+ *                       order (one entry per enum constant)
+ *   code table  long  - product codes, as slots of an open-addressing hash table laid out as in ProductIndex
+ *                       (code slots entries)
+ *   code rows   int   - the row of the garment whose code is in the same slot, or -1 if the slot is empty (code slots entries)
+ *   offsets     int   - start of each string in the string data (string count + 1 entries)
+ *   strings     UTF-8 string data
+ */
+public class CatalogFile {
+
+    private static final int MAGIC = 0x47474743;
+    private static final int VERSION = 2;
+    private static final int HEADER_BYTES = 6 * Integer.BYTES;
+
+    // The single-valued enum filters, in the order their columns appear in the file.
+    private static final Filter[] ENUM_COLUMNS = {Filter.GARMENT_TYPE, Filter.MATERIAL, Filter.NECKLINE,
+            Filter.SLEEVE_TYPE, Filter.HOODIE_STYLE, Filter.POCKET_TYPE};
+    private static final Filter[] FILTERS = Filter.values();
+    // Where each enum-valued filter's entries start among the value counts, indexed by Filter ordinal, and how many
+    // entries there are in all.
+    private static final int[] VALUE_COUNT_STARTS = new int[FILTERS.length];
+    private static final int VALUE_COUNTS;
+    static {
+        int entries = 0;
+        for(Filter key: FILTERS){
+            VALUE_COUNT_STARTS[key.ordinal()] = entries;
+            if(key.isEnumValued()) entries += key.getValueType().getEnumConstants().length;
+        }
+        VALUE_COUNTS = entries;
+    }
+
+    private final MappedByteBuffer buffer;
+    private final int garmentCount;
+    private final int stringCount;
+    private final int brandCount;
+    private final int codeSlots;
+
+    // Start of each column within the file.
+    private final int specifiedColumn;
+    private final int[] enumColumns = new int[ENUM_COLUMNS.length];
+    private final int sizeColumn;
+    private final int brandColumn;
+    private final int nameColumn;
+    private final int descriptionColumn;
+    private final int priceColumn;
+    private final int codeColumn;
+    private final int brandList;
+    private final int brandCounts;
+    private final int specifiedCounts;
+    private final int valueCounts;
+    private final int codeTable;
+    private final int codeRows;
+    private final int stringOffsets;
+    private final int stringData;
+
+    // How often each filter value occurs, read from the file the first time the catalog is searched. Only the brands
+    // need looking up, to give them their BrandDictionary ids.
+    private volatile FilterStatistics statistics;
+    // The string ids of the catalog's brands in ascending order, and the BrandDictionary id of each. Set alongside the
+    // statistics, which publish them.
+    private int[] brandStringIds;
+    private int[] brandDictionaryIds;
+
+    private CatalogFile(MappedByteBuffer buffer, int garmentCount, int stringCount, int brandCount, int codeSlots) {
+        this.buffer = buffer;
+        this.garmentCount = garmentCount;
+        this.stringCount = stringCount;
+        this.brandCount = brandCount;
+        this.codeSlots = codeSlots;
+        int position = HEADER_BYTES;
+        specifiedColumn = position;
+        position += garmentCount;
+        for(int c=0;c<ENUM_COLUMNS.length;c++){
+            enumColumns[c] = position;
+            position += garmentCount;
+        }
+        sizeColumn = position;
+        position += garmentCount * Short.BYTES;
+        brandColumn = position;
+        position += garmentCount * Integer.BYTES;
+        nameColumn = position;
+        position += garmentCount * Integer.BYTES;
+        descriptionColumn = position;
+        position += garmentCount * Integer.BYTES;
+        priceColumn = position;
+        position += garmentCount * Long.BYTES;
+        codeColumn = position;
+        position += garmentCount * Long.BYTES;
+        brandList = position;
+        position += brandCount * Integer.BYTES;
+        brandCounts = position;
+        position += brandCount * Integer.BYTES;
+        specifiedCounts = position;
+        position += FILTERS.length * Integer.BYTES;
+        valueCounts = position;
+        position += VALUE_COUNTS * Integer.BYTES;
+        codeTable = position;
+        position += codeSlots * Long.BYTES;
+        codeRows = position;
+        position += codeSlots * Integer.BYTES;
+        stringOffsets = position;
+        position += (stringCount+1) * Integer.BYTES;
+        stringData = position;
+    }
+
+    /**
+     * The purpose of this method is to compile an inventory text file into a catalog file.
+     * Usage: java CatalogFile [inventory file] [catalog file]
+     * @param args the inventory file to read and the catalog file to write, defaulting to ./inventory.txt and ./inventory.catalog.
+     */
+    public static void main(String[] args) throws IOException {
+        Path inventoryPath = Path.of(args.length>0 ? args[0] : "./inventory.txt");
+        Path catalogPath = Path.of(args.length>1 ? args[1] : "./inventory.catalog");
+        List<Garment> garments = InventoryParser.parse(inventoryPath);
+        write(garments, catalogPath);
+        System.out.println("Compiled "+garments.size()+" garments into "+catalogPath);
+    }
+
+    /**
+     * The purpose of this method is to write garments to a catalog file, replacing the file if it exists. The catalog is
+     * written to a temporary file beside it, which then replaces it in one step, so an app that has the old catalog mapped
+     * keeps reading it unchanged, and a write that fails part way leaves the old catalog in place.
+     * @param garments the garments to write, in the order they should be searched.
+     * @param catalogPath the location of the catalog file.
+     * @throws IOException if the file cannot be written.
+     * @throws IllegalArgumentException if a product code is used by more than one of the garments.
+     */
+    public static void write(List<Garment> garments, Path catalogPath) throws IOException {
+        ProductIndex codes = new ProductIndex(garments.size());
+        for(int i=0;i<garments.size();i++){
+            int earlier = codes.put(garments.get(i).getProductCode(), i);
+            if(earlier>=0) throw Inventory.duplicateProductCode(garments.get(earlier), garments.get(i));
+        }
+
+        // Give every distinct string an id, recording which of them are brands and where each brand is in the brand list,
+        // and count the garments holding each filter value.
+        Map<String,Integer> stringIds = new LinkedHashMap<>();
+        Map<Integer,Integer> brandPositions = new LinkedHashMap<>();
+        int[] brandTotals = new int[garments.size()];
+        int[] specifiedTotals = new int[FILTERS.length];
+        int[] valueTotals = new int[VALUE_COUNTS];
+        for(Garment garment: garments){
+            GarmentSpecs specs = garment.getGarmentSpecs();
+            int brandId = stringIds.computeIfAbsent(brandOf(garment), s -> stringIds.size());
+            // A garment without a brand still has an entry in the brand column, but it is not one of the catalog's brands.
+            if(specs.hasFilter(Filter.BRAND)) brandTotals[brandPositions.computeIfAbsent(brandId, id -> brandPositions.size())]++;
+            stringIds.computeIfAbsent(garment.getName(), s -> stringIds.size());
+            stringIds.computeIfAbsent(garment.getDescription(), s -> stringIds.size());
+            for(Filter key: FILTERS){
+                if(!specs.hasFilter(key)) continue;
+                specifiedTotals[key.ordinal()]++;
+                if(!key.isEnumValued()) continue;
+                for(long mask = specs.getValueMask(key); mask!=0; mask &= mask-1){
+                    valueTotals[VALUE_COUNT_STARTS[key.ordinal()]+Long.numberOfTrailingZeros(mask)]++;
+                }
+            }
+        }
+        List<byte[]> encodedStrings = new ArrayList<>(stringIds.size());
+        long stringBytes = 0;
+        for(String s: stringIds.keySet()){
+            byte[] encoded = s.getBytes(StandardCharsets.UTF_8);
+            encodedStrings.add(encoded);
+            stringBytes += encoded.length;
+        }
+
+        long fileSize = bytesBeforeStrings(garments.size(), stringIds.size(), brandPositions.size(), codes.capacity()) + stringBytes;
+        if(fileSize>Integer.MAX_VALUE) throw new IOException("Catalog would exceed the 2GB limit of a single mapped file");
+
+        Path writing = catalogPath.resolveSibling(catalogPath.getFileName()+".tmp");
+        try(FileChannel channel = FileChannel.open(writing, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)){
+            MappedByteBuffer out = channel.map(FileChannel.MapMode.READ_WRITE, 0, fileSize);
+            out.putInt(MAGIC).putInt(VERSION).putInt(garments.size()).putInt(stringIds.size()).putInt(brandPositions.size())
+                    .putInt(codes.capacity());
+            CatalogFile layout = new CatalogFile(out, garments.size(), stringIds.size(), brandPositions.size(), codes.capacity());
+            for(int i=0;i<garments.size();i++){
+                Garment garment = garments.get(i);
+                GarmentSpecs specs = garment.getGarmentSpecs();
+                byte specified = 0;
+                for(Filter key: Filter.values()) if(specs.hasFilter(key)) specified |= (byte) (1 << key.ordinal());
+                out.put(layout.specifiedColumn+i, specified);
+                for(int c=0;c<ENUM_COLUMNS.length;c++){
+                    long mask = specs.getValueMask(ENUM_COLUMNS[c]);
+                    out.put(layout.enumColumns[c]+i, (byte) (mask==0 ? 0 : Long.numberOfTrailingZeros(mask)));
+                }
+                out.putShort(layout.sizeColumn+i*Short.BYTES, (short) specs.getValueMask(Filter.SIZE));
+                out.putInt(layout.brandColumn+i*Integer.BYTES, stringIds.get(brandOf(garment)));
+                out.putInt(layout.nameColumn+i*Integer.BYTES, stringIds.get(garment.getName()));
+                out.putInt(layout.descriptionColumn+i*Integer.BYTES, stringIds.get(garment.getDescription()));
+                out.putLong(layout.priceColumn+i*Long.BYTES, Math.round(garment.getPrice()*100));
+                out.putLong(layout.codeColumn+i*Long.BYTES, garment.getProductCode());
+            }
+            for(Map.Entry<Integer,Integer> brand: brandPositions.entrySet()){
+                out.putInt(layout.brandList+brand.getValue()*Integer.BYTES, brand.getKey());
+                out.putInt(layout.brandCounts+brand.getValue()*Integer.BYTES, brandTotals[brand.getValue()]);
+            }
+            for(int f=0;f<FILTERS.length;f++) out.putInt(layout.specifiedCounts+f*Integer.BYTES, specifiedTotals[f]);
+            for(int v=0;v<VALUE_COUNTS;v++) out.putInt(layout.valueCounts+v*Integer.BYTES, valueTotals[v]);
+            for(int slot=0;slot<codes.capacity();slot++){
+                out.putLong(layout.codeTable+slot*Long.BYTES, codes.codeAt(slot));
+                out.putInt(layout.codeRows+slot*Integer.BYTES, codes.positionAt(slot));
+            }
+            int offset = 0;
+            out.position(layout.stringData);
+            for(int id=0;id<encodedStrings.size();id++){
+                out.putInt(layout.stringOffsets+id*Integer.BYTES, offset);
+                out.put(encodedStrings.get(id));
+                offset += encodedStrings.get(id).length;
+            }
+            out.putInt(layout.stringOffsets+encodedStrings.size()*Integer.BYTES, offset);
+            out.force();
+        }catch (IOException | RuntimeException e){
+            Files.deleteIfExists(writing);
+            throw e;
+        }
+        Files.move(writing, catalogPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * @return the size of a catalog file up to the start of its string data.
+     */
+    private static long bytesBeforeStrings(int garmentCount, int stringCount, int brandCount, int codeSlots){
+        return HEADER_BYTES
+                + (long) garmentCount * (1 + ENUM_COLUMNS.length + Short.BYTES + 3 * Integer.BYTES + 2 * Long.BYTES)
+                + 2L * brandCount * Integer.BYTES + (long) (FILTERS.length + VALUE_COUNTS) * Integer.BYTES
+                + (long) codeSlots * (Long.BYTES + Integer.BYTES) + (stringCount+1L) * Integer.BYTES;
+    }
+
+    private static String brandOf(Garment garment){
+        Object brand = garment.getGarmentSpecs().getFilter(Filter.BRAND);
+        return brand==null ? "" : brand.toString();
+    }
+
+    /**
+     * The purpose of this method is to memory-map a catalog file so it can be searched in place.
+     * @param catalogPath the location of the catalog file.
+     * @return the opened catalog.
+     * @throws IOException if the file cannot be read, is not a catalog file of this version, or is shorter than its
+     *                     header says it is, e.g. because it was truncated.
+     */
+    public static CatalogFile open(Path catalogPath) throws IOException {
+        try(FileChannel channel = FileChannel.open(catalogPath, StandardOpenOption.READ)){
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if(channel.size()<HEADER_BYTES || buffer.getInt(0)!=MAGIC || buffer.getInt(4)!=VERSION){
+                throw new IOException(catalogPath+" is not a version "+VERSION+" catalog file");
+            }
+            int garmentCount = buffer.getInt(8);
+            int stringCount = buffer.getInt(12);
+            int brandCount = buffer.getInt(16);
+            int codeSlots = buffer.getInt(20);
+            if(garmentCount<0 || stringCount<0 || brandCount<0 || codeSlots<0
+                    || bytesBeforeStrings(garmentCount, stringCount, brandCount, codeSlots)>channel.size()){
+                throw new IOException(catalogPath+" is damaged: its header does not match the size of the file");
+            }
+            // A lookup probes until it finds an empty slot, so the table must be a power of two with room to spare.
+            if(Integer.bitCount(codeSlots)!=1 || codeSlots<=garmentCount){
+                throw new IOException(catalogPath+" is damaged: its product code table has "+codeSlots+" slots");
+            }
+            CatalogFile catalog = new CatalogFile(buffer, garmentCount, stringCount, brandCount, codeSlots);
+            // The strings are stored one after another, so the last one must end within the file.
+            int stringBytes = buffer.getInt(catalog.stringOffsets+stringCount*Integer.BYTES);
+            if(stringBytes<0 || catalog.stringData+(long) stringBytes>channel.size()){
+                throw new IOException(catalogPath+" is damaged: its string data is incomplete");
+            }
+            return catalog;
+        }
+    }
+
+    public int size(){
+        return garmentCount;
+    }
+
+    /**
+     * @return the distinct brands in the catalog, in the order they first appear.
+     */
+    public Set<String> getAllBrands(){
+        Set<String> brands = new LinkedHashSet<>();
+        for(int i=0;i<brandCount;i++) brands.add(string(buffer.getInt(brandList+i*Integer.BYTES)));
+        return brands;
+    }
+
+    /**
+     * The purpose of this method is to find the row of the garment with a product code, by probing the catalog's product
+     * code table in place.
+     * @param productCode the product code.
+     * @return the position of the garment in the catalog, or -1 if there is none.
+     */
+    public int findRow(long productCode){
+        int row;
+        for(int slot = ProductIndex.firstSlot(productCode, codeSlots); (row = buffer.getInt(codeRows+slot*Integer.BYTES))>=0;
+            slot = (slot+1) & (codeSlots-1)){
+            if(buffer.getLong(codeTable+slot*Long.BYTES)==productCode) return row;
+        }
+        return -1;
+    }
+
+    /**
+     * The purpose of this method is to get how often each filter value occurs in the catalog, for planning searches.
+     * The first call reads the counts stored in the catalog.
+     * @return the statistics of the catalog's garments.
+     */
+    FilterStatistics getStatistics(){
+        FilterStatistics counted = statistics;
+        return counted!=null ? counted : readStatistics();
+    }
+
+    private synchronized FilterStatistics readStatistics(){
+        if(statistics==null){
+            int[] specifiedTotals = new int[FILTERS.length];
+            int[][] valueTotals = new int[FILTERS.length][];
+            for(Filter key: FILTERS){
+                int f = key.ordinal();
+                specifiedTotals[f] = buffer.getInt(specifiedCounts+f*Integer.BYTES);
+                if(!key.isEnumValued()) continue;
+                valueTotals[f] = new int[key.getValueType().getEnumConstants().length];
+                for(int v=0;v<valueTotals[f].length;v++) valueTotals[f][v] = buffer.getInt(valueCounts+(VALUE_COUNT_STARTS[f]+v)*Integer.BYTES);
+            }
+            // Brands are counted by BrandDictionary id, so each of the catalog's brands is given its id.
+            int[] brandTotals = new int[16];
+            long[] brandIds = new long[brandCount];
+            for(int i=0;i<brandCount;i++){
+                int stringId = buffer.getInt(brandList+i*Integer.BYTES);
+                int id = BrandDictionary.idOf(string(stringId));
+                if(id>=brandTotals.length) brandTotals = Arrays.copyOf(brandTotals, Math.max(id+1, brandTotals.length*2));
+                brandTotals[id] += buffer.getInt(brandCounts+i*Integer.BYTES);
+                brandIds[i] = (long) stringId << 32 | id;
+            }
+            valueTotals[Filter.BRAND.ordinal()] = brandTotals;
+            // Sorted by string id, which is held in the high half.
+            Arrays.sort(brandIds);
+            brandStringIds = new int[brandCount];
+            brandDictionaryIds = new int[brandCount];
+            for(int i=0;i<brandCount;i++){
+                brandStringIds[i] = (int) (brandIds[i] >>> 32);
+                brandDictionaryIds[i] = (int) brandIds[i];
+            }
+            statistics = new FilterStatistics(garmentCount, specifiedTotals, valueTotals);
+        }
+        return statistics;
+    }
+
+    /**
+     * @param row the position of a garment in the catalog.
+     * @return the garment's product code, read without creating a Garment.
+     */
+    long productCodeOf(int row){
+        return buffer.getLong(codeColumn+row*Long.BYTES);
+    }
+
+    /**
+     * @param row the position of a garment in the catalog.
+     * @return the BrandDictionary id of the garment's brand, or -1 if it has none, read without creating a Garment.
+     */
+    int brandIdOf(int row){
+        if((buffer.get(specifiedColumn+row) & (1 << Filter.BRAND.ordinal()))==0) return -1;
+        getStatistics();
+        int position = Arrays.binarySearch(brandStringIds, buffer.getInt(brandColumn+row*Integer.BYTES));
+        return position<0 ? -1 : brandDictionaryIds[position];
+    }
+
+    /**
+     * The purpose of this method is to search the catalog in place, only creating Garment objects for the matches.
+     * @param dreamGarment the user's search criteria.
+     * @return the matching garments in catalog order.
+     */
+    public List<Garment> findMatch(GarmentSpecs dreamGarment){
+        List<Garment> matchingGarments = new ArrayList<>();
+        findMatch(dreamGarment, matchingGarments::addAll);
+        return matchingGarments;
+    }
+
+    /**
+     * The purpose of this method is to search the catalog in place, handing over the matches a block of garments at a time.
+     * @param dreamGarment the user's search criteria.
+     * @param onBatch called with each non-empty batch of matching garments, in catalog order.
+     */
+    public void findMatch(GarmentSpecs dreamGarment, Consumer<List<Garment>> onBatch){
+        IntPredicate rowMatches = rowMatcher(dreamGarment);
+        for(int from=0;from<garmentCount;from+=Inventory.SEGMENT_SIZE){
+            int[] rows = findMatchingRows(rowMatches, from, Math.min(from+Inventory.SEGMENT_SIZE, garmentCount));
+            if(rows.length>0) onBatch.accept(IntStream.of(rows).mapToObj(this::garment).toList());
+        }
+    }
+
+    /**
+     * The purpose of this method is to search a range of rows without creating any Garment objects, e.g. one block of a
+     * search split across several threads.
+     * @param rowMatches the compiled search, from rowMatcher.
+     * @param from the first row to search.
+     * @param to the row after the last row to search.
+     * @return the matching rows, in catalog order.
+     */
+    int[] findMatchingRows(IntPredicate rowMatches, int from, int to){
+        int[] rows = new int[to-from];
+        int count = 0;
+        for(int i=from;i<to;i++){
+            if(rowMatches.test(i)) rows[count++] = i;
+        }
+        return Arrays.copyOf(rows, count);
+    }
+
+    /**
+     * The purpose of this method is to add every garment in the catalog to a set of facet counts, reading the columns
+     * directly rather than creating Garment objects.
+     * @param facetCounts the counts to add to.
+     * @param cancelled checked before every segment's worth of rows, to stop a count that is no longer wanted.
+     * @throws CancellationException if cancelled returns true before every row is counted.
+     */
+    public void countFacets(FacetCounts facetCounts, BooleanSupplier cancelled){
+        long[] valueMasks = new long[Filter.values().length];
+        // BrandDictionary ids by string id, looked up once each.
+        int[] brandIds = new int[stringCount];
+        Arrays.fill(brandIds, -1);
+        for(int i=0;i<garmentCount;i++){
+            if(i%Inventory.SEGMENT_SIZE==0 && cancelled.getAsBoolean()) throw new CancellationException();
+            for(int c=0;c<ENUM_COLUMNS.length;c++) valueMasks[ENUM_COLUMNS[c].ordinal()] = 1L << buffer.get(enumColumns[c]+i);
+            valueMasks[Filter.SIZE.ordinal()] = buffer.getShort(sizeColumn+i*Short.BYTES) & 0xFFFF;
+            int specified = buffer.get(specifiedColumn+i) & 0xFF;
+            int brand = buffer.getInt(brandColumn+i*Integer.BYTES);
+            if((specified & (1 << Filter.BRAND.ordinal()))==0) brand = -1;
+            else if(brandIds[brand]<0) brandIds[brand] = BrandDictionary.idOf(string(brand));
+            facetCounts.count(buffer.getLong(priceColumn+i*Long.BYTES)/100.0, specified, valueMasks, brand<0 ? -1 : brandIds[brand]);
+        }
+    }
+
+    /**
+     * The purpose of this method is to search the catalog lazily. Rows are only checked as the stream is consumed,
+     * so a short-circuiting stream, e.g. one with a limit, stops reading the catalog once it has enough garments.
+     * @param dreamGarment the user's search criteria.
+     * @return a sequential stream of the matching garments in catalog order.
+     */
+    public Stream<Garment> streamMatches(GarmentSpecs dreamGarment){
+        return IntStream.range(0, garmentCount).filter(rowMatcher(dreamGarment)).mapToObj(this::garment);
+    }
+
+    /**
+     * The purpose of this method is to compile a search into a test of a single catalog row, reading only the columns
+     * the search constrains, in the order planned from the catalog's statistics. The predicate only reads the catalog,
+     * so it may be tested on several threads at once.
+     * @param dreamGarment the user's search criteria.
+     * @return a predicate that is true for the positions of the matching garments.
+     */
+    IntPredicate rowMatcher(GarmentSpecs dreamGarment){
+        GarmentMatcher matcher = getStatistics().plan(dreamGarment).getMatcher();
+        Filter[] order = matcher.getOrder();
+        // The start of the column of each filter, in the order they are checked.
+        int[] columns = new int[order.length];
+        for(int k=0;k<order.length;k++){
+            if(order[k]==Filter.SIZE) columns[k] = sizeColumn;
+            else if(order[k]==Filter.BRAND) columns[k] = brandColumn;
+            else columns[k] = enumColumns[Arrays.asList(ENUM_COLUMNS).indexOf(order[k])];
+        }
+        BitSet acceptedBrands;
+        if(matcher.constrains(Filter.BRAND)){
+            acceptedBrands = new BitSet(stringCount);
+            for(int i=0;i<brandCount;i++){
+                int id = buffer.getInt(brandList+i*Integer.BYTES);
+                if(matcher.acceptsValue(Filter.BRAND, string(id))) acceptedBrands.set(id);
+            }
+        }
+        else acceptedBrands = null;
+
+        return i -> {
+            if(!matcher.acceptsPrice(buffer.getLong(priceColumn+i*Long.BYTES)/100.0)) return false;
+            int specified = buffer.get(specifiedColumn+i);
+            for(int k=0;k<order.length;k++){
+                Filter key = order[k];
+                if((specified & (1 << key.ordinal()))==0) continue;
+                if(!acceptsColumn(matcher, acceptedBrands, key, columns[k], i)) return false;
+            }
+            return true;
+        };
+    }
+
+    private boolean acceptsColumn(GarmentMatcher matcher, BitSet acceptedBrands, Filter key, int column, int i){
+        return switch (key) {
+            case SIZE -> matcher.acceptsMask(key, buffer.getShort(column+i*Short.BYTES) & 0xFFFF);
+            case BRAND -> acceptedBrands.get(buffer.getInt(column+i*Integer.BYTES));
+            default -> matcher.acceptsMask(key, 1L << buffer.get(column+i));
+        };
+    }
+
+    /**
+     * The purpose of this method is to create a Garment object from one row of the catalog.
+     * @param i the position of the garment in the catalog.
+     * @return the Garment stored at that position.
+     */
+    public Garment garment(int i){
+        int specified = buffer.get(specifiedColumn+i);
+        Map<Filter,Object> filterMap = new LinkedHashMap<>();
+        for(int c=0;c<ENUM_COLUMNS.length;c++){
+            Filter key = ENUM_COLUMNS[c];
+            if((specified & (1 << key.ordinal()))!=0) filterMap.put(key, key.getValueType().getEnumConstants()[buffer.get(enumColumns[c]+i)]);
+        }
+        if((specified & (1 << Filter.BRAND.ordinal()))!=0) filterMap.put(Filter.BRAND, string(buffer.getInt(brandColumn+i*Integer.BYTES)));
+        if((specified & (1 << Filter.SIZE.ordinal()))!=0){
+            Set<Size> sizes = EnumSet.noneOf(Size.class);
+            int mask = buffer.getShort(sizeColumn+i*Short.BYTES) & 0xFFFF;
+            for(Size size: Size.values()) if((mask & (1 << size.ordinal()))!=0) sizes.add(size);
+            filterMap.put(Filter.SIZE, sizes);
+        }
+        return new Garment(string(buffer.getInt(nameColumn+i*Integer.BYTES)), buffer.getLong(codeColumn+i*Long.BYTES),
+                buffer.getLong(priceColumn+i*Long.BYTES)/100.0, string(buffer.getInt(descriptionColumn+i*Integer.BYTES)),
+                new GarmentSpecs(filterMap));
+    }
+
+    private String string(int id){
+        int start = buffer.getInt(stringOffsets+id*Integer.BYTES);
+        int end = buffer.getInt(stringOffsets+(id+1)*Integer.BYTES);
+        byte[] encoded = new byte[end-start];
+        buffer.get(stringData+start, encoded);
+        return new String(encoded, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,100 @@
+import java.util.Arrays;
+
+/**
+ * Counts, for a search that is still being chosen, how many garments there are for each value of every filter.
+ * The counts for a filter ignore the search's own choice for that filter, so that every alternative is counted,
+ * but apply all of its other choices and its price range. E.g. with cotton and size M chosen, the material counts are
+ * the size M garments of each material, and the size counts are the cotton garments in each size.
+ *
+ * All the filters are counted in a single pass: a garment that fails none of the search's choices is counted for every
+ * filter, one that fails exactly one choice is counted only for that choice's filter, and any other garment is skipped.
+ */
+public class FacetCounts {
+
+    private static final Filter[] FILTERS = Filter.values();
+    // Brand is the only filter that is not enum-valued.
+    private static final int BRAND = Filter.BRAND.ordinal();
+
+    private final GarmentMatcher matcher;
+    // For enum-valued filters, a count per enum ordinal, indexed by Filter ordinal.
+    private final int[][] enumCounts = new int[FILTERS.length][];
+    // A count per BrandDictionary id, grown as larger ids are counted.
+    private int[] brandCounts = new int[0];
+    private int matchCount;
+
+    // Reused for each garment counted, indexed by Filter ordinal.
+    private final long[] valueMasks = new long[FILTERS.length];
+
+    /**
+     * @param search the choices made so far.
+     */
+    public FacetCounts(GarmentSpecs search) {
+        this.matcher = search.compile();
+        for(Filter key: FILTERS){
+            if(key.isEnumValued()) enumCounts[key.ordinal()] = new int[key.getValueType().getEnumConstants().length];
+        }
+    }
+
+    /**
+     * The purpose of this method is to add a garment held in memory to the counts.
+     * @param garment the garment to count, which is in the inventory, so its brand already has its id.
+     */
+    public void count(Garment garment){
+        GarmentSpecs garmentSpecs = garment.getGarmentSpecs();
+        for(int f = 0; f < FILTERS.length; f++) valueMasks[f] = garmentSpecs.getValueMask(FILTERS[f]);
+        count(garment.getPrice(), garmentSpecs.getSpecifiedFilters(), valueMasks, garmentSpecs.getBrandId());
+    }
+
+    /**
+     * The purpose of this method is to add a garment to the counts from its stored form, e.g. a row of a CatalogFile.
+     * @param price the garment's price.
+     * @param specifiedFilters a bit per Filter ordinal, set if the garment has a value for that filter.
+     * @param valueMasks for enum-valued filters, the bitmask of the enum ordinals the garment holds, indexed by Filter ordinal.
+     * @param brandId the BrandDictionary id of the garment's brand, or -1 if it has none. A brand without an id is
+     *                accepted by every search, as it is when searching, but not counted.
+     */
+    void count(double price, long specifiedFilters, long[] valueMasks, int brandId){
+        if(!matcher.acceptsPrice(price)) return;
+
+        // Find the one choice the garment fails, if any. A garment that fails two choices is not counted at all.
+        int failed = -1;
+        for(long shared = specifiedFilters; shared!=0; shared &= shared-1){
+            int f = Long.numberOfTrailingZeros(shared);
+            boolean accepted = f==BRAND ? brandId<0 || matcher.acceptsBrandId(brandId) : matcher.acceptsMask(FILTERS[f], valueMasks[f]);
+            if(accepted) continue;
+            if(failed>=0) return;
+            failed = f;
+        }
+        if(failed<0) matchCount++;
+
+        for(long specified = specifiedFilters; specified!=0; specified &= specified-1){
+            int f = Long.numberOfTrailingZeros(specified);
+            if(failed>=0 && failed!=f) continue;
+            if(f!=BRAND){
+                for(long mask = valueMasks[f]; mask!=0; mask &= mask-1) enumCounts[f][Long.numberOfTrailingZeros(mask)]++;
+            }
+            else if(brandId>=0){
+                if(brandId>=brandCounts.length) brandCounts = Arrays.copyOf(brandCounts, Math.max(brandId+1, brandCounts.length*2));
+                brandCounts[brandId]++;
+            }
+        }
+    }
+
+    /**
+     * @param key a filter.
+     * @param value a value of the filter, e.g. Size.M or a brand name.
+     * @return the number of garments with that value that match every other choice of the search.
+     */
+    public int getCount(Filter key, Object value){
+        if(enumCounts[key.ordinal()]!=null) return value instanceof Enum<?> e ? enumCounts[key.ordinal()][e.ordinal()] : 0;
+        int brandId = value instanceof String brand ? BrandDictionary.find(brand) : -1;
+        return brandId>=0 && brandId<brandCounts.length ? brandCounts[brandId] : 0;
+    }
+
+    /**
+     * @return the number of garments that match every choice of the search.
+     */
+    public int getMatchCount(){
+        return matchCount;
+    }
+}
@@ -13,4 +13,25 @@ public enum Filter {
             case POCKET_TYPE -> "Type of pocket";
         };
     }
+
+    /**
+     * The purpose of this method is to return the type of value that a garment holds for this filter.
+     * @return the class of the filter's values.
+     */
+    public Class<?> getValueType() {
+        return switch (this){
+            case GARMENT_TYPE -> GarmentType.class;
+            case BRAND -> String.class;
+            case SIZE -> Size.class;
+            case MATERIAL -> Material.class;
+            case NECKLINE -> Neckline.class;
+            case SLEEVE_TYPE -> SleeveType.class;
+            case HOODIE_STYLE -> HoodieStyle.class;
+            case POCKET_TYPE -> PocketType.class;
+        };
+    }
+
+    public boolean isEnumValued() {
+        return getValueType().isEnum();
+    }
 }
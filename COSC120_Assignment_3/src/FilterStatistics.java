@@ -0,0 +1,157 @@
+import java.util.*;
+
+/**
+ * How many garments hold each value of each filter. Used to plan a search: the number of garments a criterion allows
+ * can be estimated before any garment is looked at, so the most selective criteria are checked first.
+ *
+ * Statistics are counted while they are being built and never changed once handed out. Adding garments to an inventory
+ * builds a new copy, so each snapshot of the inventory has statistics that agree with it.
+ */
+final class FilterStatistics {
+
+    private static final Filter[] FILTERS = Filter.values();
+    private static final int BRAND = Filter.BRAND.ordinal();
+
+    // A criterion that allows more than this fraction of the garments narrows the candidates too little to be worth
+    // looking up in a bitmap index; the matcher checks it instead.
+    private static final double MAX_INDEXED_FRACTION = 0.5;
+
+    static final FilterStatistics EMPTY = new FilterStatistics();
+
+    private int garmentCount;
+    // The number of garments that have any value for each filter, indexed by Filter ordinal.
+    private final int[] specifiedCounts;
+    // The number of garments holding each value, indexed by Filter ordinal and then by enum ordinal, or for brands by
+    // BrandDictionary id. A garment with several values for a filter, e.g. sizes, is counted once for each.
+    private final int[][] valueCounts;
+
+    FilterStatistics() {
+        specifiedCounts = new int[FILTERS.length];
+        valueCounts = new int[FILTERS.length][];
+        for(Filter key: FILTERS){
+            valueCounts[key.ordinal()] = new int[key.isEnumValued() ? key.getValueType().getEnumConstants().length : 16];
+        }
+    }
+
+    /**
+     * Statistics that were counted elsewhere, e.g. when a CatalogFile was written.
+     * @param garmentCount the number of garments counted.
+     * @param specifiedCounts the number of garments that have any value for each filter, indexed by Filter ordinal.
+     * @param valueCounts the number of garments holding each value, indexed by Filter ordinal and then by enum ordinal,
+     *                    or for brands by BrandDictionary id.
+     */
+    FilterStatistics(int garmentCount, int[] specifiedCounts, int[][] valueCounts) {
+        this.garmentCount = garmentCount;
+        this.specifiedCounts = specifiedCounts;
+        this.valueCounts = valueCounts;
+    }
+
+    private FilterStatistics(FilterStatistics copied) {
+        garmentCount = copied.garmentCount;
+        specifiedCounts = copied.specifiedCounts.clone();
+        valueCounts = new int[FILTERS.length][];
+        for(int f = 0; f < FILTERS.length; f++) valueCounts[f] = copied.valueCounts[f].clone();
+    }
+
+    /**
+     * The purpose of this method is to build the statistics of these garments together with some more.
+     * @param garments the garments being added.
+     * @return new statistics counting both these garments and the added ones.
+     */
+    FilterStatistics with(List<Garment> garments){
+        FilterStatistics statistics = new FilterStatistics(this);
+        for(Garment garment: garments){
+            GarmentSpecs garmentSpecs = garment.getGarmentSpecs();
+            statistics.count(garmentSpecs.getSpecifiedFilters(), garmentSpecs::getValueMask, garmentSpecs.internBrandId());
+        }
+        return statistics;
+    }
+
+    /**
+     * The purpose of this method is to count one more garment, while the statistics are being built.
+     * @param specifiedFilters a bit per Filter ordinal, set if the garment has a value for that filter.
+     * @param valueMasks gives the bitmask of the enum ordinals the garment holds for an enum-valued filter.
+     * @param brandId the BrandDictionary id of the garment's brand, or -1 if it has none.
+     */
+    void count(long specifiedFilters, ValueMasks valueMasks, int brandId){
+        garmentCount++;
+        for(long specified = specifiedFilters; specified!=0; specified &= specified-1){
+            int f = Long.numberOfTrailingZeros(specified);
+            specifiedCounts[f]++;
+            if(f==BRAND){
+                if(brandId<0) continue;
+                if(brandId>=valueCounts[f].length) valueCounts[f] = Arrays.copyOf(valueCounts[f], Math.max(brandId+1, valueCounts[f].length*2));
+                valueCounts[f][brandId]++;
+            }
+            else {
+                for(long mask = valueMasks.of(FILTERS[f]); mask!=0; mask &= mask-1) valueCounts[f][Long.numberOfTrailingZeros(mask)]++;
+            }
+        }
+    }
+
+    /**
+     * Gives the bitmask of enum ordinals a garment holds for a filter, however the garment is stored.
+     */
+    interface ValueMasks {
+        long of(Filter key);
+    }
+
+    int getGarmentCount(){
+        return garmentCount;
+    }
+
+    /**
+     * The purpose of this method is to estimate how many garments a search criterion allows. A garment that has no value
+     * for the filter is allowed by it, and a garment with several values may be counted more than once.
+     * @param matcher the compiled search.
+     * @param key a filter the search constrains.
+     * @return the estimated number of garments allowed, at most the number of garments.
+     */
+    long countAllowed(GarmentMatcher matcher, Filter key){
+        int f = key.ordinal();
+        long allowed = garmentCount-specifiedCounts[f];
+        int[] counts = valueCounts[f];
+        if(f==BRAND){
+            for(int id = 0; id < counts.length; id++) if(counts[id]>0 && matcher.acceptsBrandId(id)) allowed += counts[id];
+        }
+        else {
+            for(long mask = matcher.getAcceptedMask(key); mask!=0; mask &= mask-1){
+                int value = Long.numberOfTrailingZeros(mask);
+                if(value<counts.length) allowed += counts[value];
+            }
+        }
+        return Math.min(allowed, garmentCount);
+    }
+
+    /**
+     * The purpose of this method is to plan a search over the garments these statistics describe. The search's criteria
+     * are ordered by the number of garments they allow, fewest first, and ties are broken by filter, so the same search
+     * over the same garments always gets the same plan.
+     * @param dreamGarment the user's search criteria.
+     * @return the plan for the search.
+     */
+    QueryPlan plan(GarmentSpecs dreamGarment){
+        GarmentMatcher matcher = dreamGarment.compile();
+        List<Filter> constrained = new ArrayList<>();
+        long[] allowed = new long[FILTERS.length];
+        for(Filter key: FILTERS){
+            if(!matcher.constrains(key)) continue;
+            constrained.add(key);
+            allowed[key.ordinal()] = countAllowed(matcher, key);
+        }
+        constrained.sort(Comparator.<Filter>comparingLong(key -> allowed[key.ordinal()]).thenComparing(Comparator.naturalOrder()));
+        Filter[] order = constrained.toArray(new Filter[0]);
+
+        // The criteria selective enough to look up in an index, and the fraction of garments they are expected to leave,
+        // taking the criteria to be independent.
+        List<Filter> indexed = new ArrayList<>();
+        double fraction = 1;
+        for(Filter key: order){
+            double allowedFraction = garmentCount==0 ? 1 : (double) allowed[key.ordinal()]/garmentCount;
+            if(allowedFraction>MAX_INDEXED_FRACTION) break;
+            indexed.add(key);
+            fraction *= allowedFraction;
+        }
+        return new QueryPlan(matcher.inOrder(order), indexed.toArray(new Filter[0]), fraction);
+    }
+}
@@ -2,16 +2,25 @@ import java.text.DecimalFormat;
 import java.util.Set;
 
 public class Garment {
+    // The highest price a garment may have, the most whole cents an int can hold.
+    public static final double MAX_PRICE = Integer.MAX_VALUE/100.0;
+
     private final String name;
     private final long productCode;
     private final double price;
     private final String description;
     private final GarmentSpecs garmentSpecs;
 
+    /**
+     * The purpose of this constructor is to create a garment. Its price is rounded to whole cents, so a search compares
+     * the same price wherever the garment is kept.
+     * @throws IllegalArgumentException if the price is not a number or is more than MAX_PRICE either side of zero.
+     */
     public Garment(String name,long productCode, double price, String description, GarmentSpecs garmentSpecs) {
+        if(!(Math.abs(price)<=MAX_PRICE)) throw new IllegalArgumentException("Price out of range: "+price);
         this.name=name;
         this.productCode = productCode;
-        this.price = price;
+        this.price = Math.round(price*100)/100.0;
         this.description = description;
         this.garmentSpecs=garmentSpecs;
     }
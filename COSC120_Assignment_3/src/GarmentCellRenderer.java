@@ -0,0 +1,46 @@
+import javax.swing.*;
+import java.awt.*;
+import java.util.Set;
+
+/**
+ * Paints one garment's description in a results list. A single text area is reused to paint every row, and a row's text
+ * is only generated when the row is painted.
+ */
+public class GarmentCellRenderer extends JTextArea implements ListCellRenderer<Garment> {
+
+    private static final long serialVersionUID = 1L;
+
+    // Enough lines for the name, caption, product code, two features and price, with room for the caption to wrap.
+    private static final int LINES_PER_ROW = 9;
+
+    private final Set<Filter> features;
+
+    /**
+     * @param features the features of the type of garment being listed, e.g. the hoodie style and pocket type of hoodies.
+     */
+    public GarmentCellRenderer(Set<Filter> features) {
+        this.features = features;
+        setLineWrap(true);
+        setWrapStyleWord(true);
+        setBorder(BorderFactory.createCompoundBorder(BorderFactory.createMatteBorder(0,0,1,0,Color.LIGHT_GRAY),
+                BorderFactory.createEmptyBorder(4,4,4,4)));
+    }
+
+    /**
+     * @return the height of every row, so the list never has to measure the rows one by one.
+     */
+    public int getRowHeight(){
+        Insets insets = getInsets();
+        return LINES_PER_ROW*getFontMetrics(getFont()).getHeight()+insets.top+insets.bottom;
+    }
+
+    @Override
+    public Component getListCellRendererComponent(JList<? extends Garment> list, Garment garment, int index, boolean isSelected, boolean cellHasFocus) {
+        setText(garment.getGarmentInformation(features));
+        setBackground(isSelected ? list.getSelectionBackground() : list.getBackground());
+        setForeground(isSelected ? list.getSelectionForeground() : list.getForeground());
+        // The list paints each row at its full width, so wrap the text to that width.
+        setSize(list.getWidth(), getRowHeight());
+        return this;
+    }
+}
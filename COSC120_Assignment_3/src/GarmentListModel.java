@@ -0,0 +1,32 @@
+import javax.swing.*;
+import java.util.List;
+
+/**
+ * The garments shown in a results list. The model only holds a reference to the list of garments it is given, not a copy;
+ * their descriptions are generated by the list's renderer when a row is painted, so only the visible rows are ever turned
+ * into text. For a MatchList, only the garments of the rows that are painted or selected are ever created.
+ * A search's results are only shown once they are ranked, so the rows never change once they are shown.
+ */
+public class GarmentListModel extends AbstractListModel<Garment> {
+
+    private static final long serialVersionUID = 1L;
+
+    private final List<Garment> garments;
+
+    /**
+     * @param garments the garments to show, e.g. the ranked matches of a search. The list must not be changed afterwards.
+     */
+    public GarmentListModel(List<Garment> garments) {
+        this.garments = garments;
+    }
+
+    @Override
+    public int getSize() {
+        return garments.size();
+    }
+
+    @Override
+    public Garment getElementAt(int index) {
+        return garments.get(index);
+    }
+}
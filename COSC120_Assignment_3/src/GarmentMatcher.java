@@ -0,0 +1,191 @@
+import java.util.*;
+
+/**
+ * An immutable, compiled form of a search query. Enum-valued filters are reduced to bitmasks of the accepted enum ordinals,
+ * so checking a garment against the query is a handful of AND-and-test operations and does not allocate.
+ * Filters are checked in the order of their ordinals, unless the matcher was planned (see FilterStatistics) to check the
+ * most selective ones first.
+ */
+public class GarmentMatcher {
+
+    private static final Filter[] FILTERS = Filter.values();
+    private static final int BRAND = Filter.BRAND.ordinal();
+
+    private final double minPrice;
+    private final double maxPrice;
+    // A bit per Filter ordinal, set if the query constrains that filter.
+    private final long constrainedFilters;
+    // For enum-valued filters, the accepted enum ordinals, indexed by Filter ordinal.
+    private final long[] acceptedMasks = new long[FILTERS.length];
+    // For the remaining filters (e.g. brand names), the accepted values, indexed by Filter ordinal.
+    private final Set<?>[] acceptedValues = new Set<?>[FILTERS.length];
+    // The BrandDictionary ids of the accepted brands, or null if the query does not constrain the brand.
+    private final BitSet acceptedBrands;
+    // If the query names a brand that had no BrandDictionary id when it was compiled, the number of brands that had one;
+    // a brand given an id since is checked by name. Otherwise Integer.MAX_VALUE.
+    private final int knownBrands;
+    // The ordinals of the constrained filters, in the order they are checked.
+    private final int[] order;
+
+    public GarmentMatcher(GarmentSpecs dreamGarment) {
+        this.minPrice = dreamGarment.getMinPrice();
+        this.maxPrice = dreamGarment.getMaxPrice();
+        long constrained = 0;
+        for(Filter key: FILTERS){
+            if(!dreamGarment.hasFilter(key)) continue;
+            int f = key.ordinal();
+            constrained |= 1L << f;
+            if(key.isEnumValued()) acceptedMasks[f] = dreamGarment.getValueMask(key);
+            else if(dreamGarment.getFilter(key) instanceof Collection<?> values) acceptedValues[f] = Set.copyOf(values);
+            else acceptedValues[f] = Set.of(dreamGarment.getFilter(key));
+        }
+        this.constrainedFilters = constrained;
+        if(acceptedValues[BRAND]==null){
+            acceptedBrands = null;
+            knownBrands = Integer.MAX_VALUE;
+        }
+        else {
+            // Counted before the names are looked up, so a brand given an id in the meantime is still checked by name.
+            int brandCount = BrandDictionary.size();
+            boolean unknownBrands = false;
+            acceptedBrands = new BitSet();
+            // Only looked up, so brands no garment has are not added to the dictionary.
+            for(Object brand: acceptedValues[BRAND]){
+                int id = brand instanceof String name ? BrandDictionary.find(name) : -1;
+                if(id>=0) acceptedBrands.set(id);
+                else unknownBrands = true;
+            }
+            knownBrands = unknownBrands ? brandCount : Integer.MAX_VALUE;
+        }
+        order = new int[Long.bitCount(constrained)];
+        for(int i = 0; i < order.length; i++, constrained &= constrained-1) order[i] = Long.numberOfTrailingZeros(constrained);
+    }
+
+    private GarmentMatcher(GarmentMatcher compiled, int[] order) {
+        this.minPrice = compiled.minPrice;
+        this.maxPrice = compiled.maxPrice;
+        this.constrainedFilters = compiled.constrainedFilters;
+        System.arraycopy(compiled.acceptedMasks, 0, acceptedMasks, 0, acceptedMasks.length);
+        System.arraycopy(compiled.acceptedValues, 0, acceptedValues, 0, acceptedValues.length);
+        this.acceptedBrands = compiled.acceptedBrands;
+        this.knownBrands = compiled.knownBrands;
+        this.order = order;
+    }
+
+    /**
+     * The purpose of this method is to make a matcher for the same query that checks its filters in a different order.
+     * @param filters every filter the query constrains, in the order to check them.
+     * @return a matcher that accepts exactly the same garments as this one.
+     */
+    GarmentMatcher inOrder(Filter[] filters){
+        int[] planned = new int[filters.length];
+        for(int i = 0; i < filters.length; i++) planned[i] = filters[i].ordinal();
+        return new GarmentMatcher(this, planned);
+    }
+
+    /**
+     * @return the filters the query constrains, in the order they are checked.
+     */
+    Filter[] getOrder(){
+        Filter[] filters = new Filter[order.length];
+        for(int i = 0; i < order.length; i++) filters[i] = FILTERS[order[i]];
+        return filters;
+    }
+
+    /**
+     * The purpose of this method is to check whether a garment satisfies both the price range and the filters of the query.
+     * @param garment the garment to check.
+     * @return true if the garment matches the query.
+     */
+    public boolean matches(Garment garment){
+        double price = garment.getPrice();
+        if(price<minPrice||price>maxPrice) return false;
+        return matchesSpecs(garment.getGarmentSpecs());
+    }
+
+    /**
+     * The purpose of this method is to check whether a garment's specifications satisfy the filters of the query.
+     * A filter that the garment does not specify (e.g. a hoodie has no neckline) does not rule it out.
+     * @param garmentSpecs the specifications of the garment to check.
+     * @return true if every filter both the query and the garment specify is satisfied.
+     */
+    public boolean matchesSpecs(GarmentSpecs garmentSpecs){
+        long specified = garmentSpecs.getSpecifiedFilters();
+        for(int f: order){
+            if((specified & (1L << f))==0) continue;
+            if(acceptedValues[f]==null){
+                if((acceptedMasks[f] & garmentSpecs.getValueMask(FILTERS[f]))==0) return false;
+            }
+            else if(f==BRAND && garmentSpecs.getBrandId()>=0){
+                if(!acceptsBrandId(garmentSpecs.getBrandId())) return false;
+            }
+            else if(!acceptsValue(f, garmentSpecs.getFilter(FILTERS[f]))) return false;
+        }
+        return true;
+    }
+
+    /**
+     * @param key a filter.
+     * @return true if the query places a constraint on the filter.
+     */
+    boolean constrains(Filter key){
+        return (constrainedFilters & (1L << key.ordinal()))!=0;
+    }
+
+    /**
+     * @param key an enum-valued filter the query constrains.
+     * @return the bitmask of the enum ordinals the query accepts for the filter.
+     */
+    long getAcceptedMask(Filter key){
+        return acceptedMasks[key.ordinal()];
+    }
+
+    /**
+     * @param brandId a BrandDictionary id.
+     * @return true if the query does not constrain the brand or accepts the brand with that id.
+     */
+    boolean acceptsBrandId(int brandId){
+        return acceptedBrands==null || acceptedBrands.get(brandId)
+                || brandId>=knownBrands && acceptedValues[BRAND].contains(BrandDictionary.nameOf(brandId));
+    }
+
+    double getMinPrice(){
+        return minPrice;
+    }
+
+    double getMaxPrice(){
+        return maxPrice;
+    }
+
+    boolean acceptsPrice(double price){
+        return price>=minPrice && price<=maxPrice;
+    }
+
+    /**
+     * The purpose of this method is to check an enum-valued filter of a garment that is stored as a bitmask of enum ordinals,
+     * e.g. in a column of a CatalogFile.
+     * @param key an enum-valued filter.
+     * @param valueMask the bitmask of the enum ordinals the garment holds for the filter.
+     * @return true if the query does not constrain the filter or accepts one of the garment's values.
+     */
+    boolean acceptsMask(Filter key, long valueMask){
+        return !constrains(key) || (acceptedMasks[key.ordinal()] & valueMask)!=0;
+    }
+
+    /**
+     * @param key a filter that is not enum-valued, e.g. brand.
+     * @param value the value the garment holds for the filter.
+     * @return true if the query does not constrain the filter or accepts the value.
+     */
+    boolean acceptsValue(Filter key, Object value){
+        return !constrains(key) || acceptsValue(key.ordinal(), value);
+    }
+
+    private boolean acceptsValue(int f, Object value){
+        if(value instanceof Collection<?> values){
+            for(Object v: values) if(acceptedValues[f].contains(v)) return true;
+            return false;
+        }
+        return acceptedValues[f].contains(value);
+    }
+}
@@ -1,23 +1,38 @@
 import javax.swing.*;
 import java.awt.*;
 import java.awt.event.ActionListener;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.*;
 import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
 
 public class GarmentSearcher {
 
     // Create variables to store the images, file paths and app name for easier reference later in the code.
     private static final String filePath = "./inventory.txt";
-    private static Inventory allGarments;
+    // Compiled copy of the inventory file, written by running CatalogFile. Used instead of the inventory file when it is up to date.
+    private static final String catalogPath = "./inventory.catalog";
+    // Searches the current inventory, and supplies its brand options. The inventory is replaced as a whole when the
+    // inventory file changes, so a search works on one version throughout. Null until the inventory has first loaded.
+    private static SearchService searchService;
+    // Orders are appended to segment files in this directory by the journal's own thread, so placing an order never waits on the disk.
+    private static final String ordersPath = "./orders";
+    // ALWAYS means an order is only confirmed to the user once it is safely on the disk.
+    private static final OrderJournal.Sync orderSync = OrderJournal.Sync.ALWAYS;
+    private static OrderJournal orderJournal;
+    // How often each garment and brand has been ordered lately, used to show the most popular matches first.
+    // Null until the inventory has first loaded, since orders are replayed against it.
+    private static final String popularityPath = "./orders/popularity.txt";
+    private static PopularityTracker popularity;
     private static final String appName = "Greek Geek's Garment Getter";
     private final static String iconPath = "./icon.png";
-    private static final ImageIcon icon = new ImageIcon(iconPath);
-
-    // Store the brand options into a Set.
-    private static final Set<String> availableBrands = new HashSet<>();
+    // Shown at full size in dialogs, and loaded in the background so the window can open first.
+    private static final ImageCache.CachedIcon icon = ImageCache.shared().getIcon(iconPath, 474, 421);
 
     // The garment type that the user is interested in.
     public static GarmentType type;
@@ -29,9 +44,15 @@ public class GarmentSearcher {
     // Create the main window view
     private static JFrame mainWindow = null;
     private static JPanel searchView = null;
+    // The choices and search button of the search view being shown, so they can be enabled once the inventory has loaded.
+    private static SearchView searchFilters = null;
+    private static JButton searchButton = null;
     private static Geek geek = null;
     // Create a view for results
-    private static JComboBox<String> optionsCombo = null;
+    private static GarmentListModel resultsModel = null;
+    private static JList<Garment> resultsList = null;
+    // The search currently running in the background, if any.
+    private static SearchWorker currentSearch = null;
 
     // Create variables for user information
     private static JTextField name;
@@ -40,23 +61,60 @@ public class GarmentSearcher {
     private static JTextArea message;
 
     public static void main(String[] args) {
-        allGarments = loadInventory(filePath);
+        // The window opens straight away, showing the search view as loading, while the inventory loads in the background.
+        orderJournal = openOrderJournal(ordersPath);
+        Runtime.getRuntime().addShutdownHook(new Thread(GarmentSearcher::shutDown, "shut-down"));
         mainWindow = new JFrame(appName);
         mainWindow.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
-        mainWindow.setIconImage(icon.getImage());
+        icon.whenLoaded(mainWindow::setIconImage);
         mainWindow.setMinimumSize(new Dimension(300,300));
         searchView = generateFinalSearchView();
         mainWindow.setContentPane(searchView);
         mainWindow.pack();
         mainWindow.setVisible(true);
+        new InventoryLoader().execute();
+    }
+
+    /**
+     * Loads the inventory, and the popularity of its garments, off the event dispatch thread. Once both are ready, the
+     * search view stops showing as loading and searches can be made.
+     */
+    private static class InventoryLoader extends SwingWorker<SearchService, Void> {
+        // Only read once the loader is done.
+        private PopularityTracker loadedPopularity;
+
+        @Override
+        protected SearchService doInBackground() {
+            Inventory allGarments = openCatalog(catalogPath, filePath);
+            if(allGarments==null) allGarments = loadInventory(filePath);
+            SearchService loaded = new SearchService(allGarments);
+            loadedPopularity = openPopularity(popularityPath, ordersPath, loaded);
+            return loaded;
+        }
+
+        @Override
+        protected void done() {
+            try {
+                searchService = get();
+            }catch (InterruptedException | ExecutionException e){
+                System.out.println("Inventory could not be loaded. \nError message: "+e.getMessage());
+                System.exit(0);
+            }
+            popularity = loadedPopularity;
+            InventoryWatcher.start(Path.of(filePath), GarmentSearcher::publishInventory);
+            searchFilters.showInventory(searchService);
+            searchButton.setText("SEARCH: The perfect outfit begins here");
+            searchButton.setEnabled(true);
+        }
     }
 
     /**
      * The purpose of this method is to create a new search view or refresh the search view to start a new search.
-     * @return a new search view.
+     * @return a new search view, which shows as loading if the inventory has not loaded yet.
      */
     public static SearchView refreshSearchView(){
-        return new SearchView(availableBrands);
+        if(searchService==null) return new SearchView(null, null);
+        return new SearchView(searchService.getAvailableBrands(), searchService);
     }
 
     /**
@@ -69,14 +127,21 @@ public class GarmentSearcher {
         searchWindow.setLayout(new BorderLayout());
 
         // Create an empty search in the window.
-        SearchView searchFilters = refreshSearchView();
-        JPanel searchCriteriaPanel = searchFilters.generateSearchView();
+        SearchView filters = refreshSearchView();
+        JPanel searchCriteriaPanel = filters.generateSearchView();
         searchWindow.add(searchCriteriaPanel, BorderLayout.CENTER);
 
         // Create the search button that triggers the search based on the user's search criteria.
+        // It stays disabled until there is an inventory to search.
         JButton search = new JButton("SEARCH: The perfect outfit begins here");
-        ActionListener actionListener = e -> conductSearch(searchFilters);
+        if(searchService==null){
+            search.setText("Loading inventory...");
+            search.setEnabled(false);
+        }
+        ActionListener actionListener = e -> conductSearch(filters);
         search.addActionListener(actionListener);
+        searchFilters = filters;
+        searchButton = search;
 
         searchWindow.add(search,BorderLayout.SOUTH);
         searchWindow.add(Box.createRigidArea(new Dimension(20,0)),BorderLayout.WEST);
@@ -130,10 +195,72 @@ public class GarmentSearcher {
             if(!sleeveType.equals(SleeveType.NA)) filterMap.put(Filter.SLEEVE_TYPE, sleeveType);
         }
 
-        // Look for matching garments in the inventory and display them to the user.
+        // Look for matching garments in the inventory in the background and display them to the user once they are ranked.
+        // A new search replaces any search that is still running.
         GarmentSpecs garmentSpecs = new GarmentSpecs(filterMap, minPrice, maxPrice);
-        List<Garment> relevantGarments = allGarments.findMatch(garmentSpecs);
-        showResults(relevantGarments);
+        cancelSearch();
+        currentSearch = new SearchWorker(searchService, garmentSpecs);
+        mainWindow.setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
+        searchButton.setText("Searching...");
+        currentSearch.execute();
+    }
+
+    /**
+     * The purpose of this method is to stop the search running in the background, if any, so its results are not displayed.
+     */
+    public static void cancelSearch(){
+        if(currentSearch!=null) currentSearch.cancel(true);
+        currentSearch = null;
+        mainWindow.setCursor(Cursor.getDefaultCursor());
+    }
+
+    /**
+     * Searches the inventory off the event dispatch thread, and ranks the matches by popularity once every one has been found.
+     * The results are only shown once they are ranked, so a row never moves after it is shown; until then the search button
+     * shows how many matches have been found.
+     */
+    private static class SearchWorker extends SwingWorker<List<Garment>, String> {
+        private final SearchService searchService;
+        private final GarmentSpecs garmentSpecs;
+        // The number of matches found so far. Only used on the worker's thread.
+        private int matchesFound = 0;
+
+        private SearchWorker(SearchService searchService, GarmentSpecs garmentSpecs) {
+            this.searchService = searchService;
+            this.garmentSpecs = garmentSpecs;
+        }
+
+        @Override
+        protected List<Garment> doInBackground() {
+            // The matches are held by their ordinals in the inventory, so no Garment is created until its row is shown.
+            MatchList found = searchService.search(garmentSpecs, batch -> {
+                if(isCancelled()) throw new CancellationException();
+                matchesFound += batch.size();
+                publish("Searching... "+matchesFound+" matches found");
+            });
+            publish("Ranking "+found.size()+" matches...");
+            return popularity.rank(found);
+        }
+
+        @Override
+        protected void process(List<String> progress) {
+            // Progress is delivered on a timer, so only the latest is shown, and none once the search is done.
+            if(isCancelled() || isDone()) return;
+            searchButton.setText(progress.get(progress.size()-1));
+        }
+
+        @Override
+        protected void done() {
+            if(isCancelled()) return;
+            currentSearch = null;
+            mainWindow.setCursor(Cursor.getDefaultCursor());
+            try {
+                showResults(get());
+            }catch (InterruptedException | ExecutionException e){
+                System.out.println("Search could not be completed. \nError message: "+e.getMessage());
+                noResults();
+            }
+        }
     }
 
     /**
@@ -151,7 +278,7 @@ public class GarmentSearcher {
         results.setLayout(new BorderLayout());
         results.add(Box.createRigidArea(new Dimension(0,10)),BorderLayout.NORTH);
         results.add(generateGarmentDescriptions(relevantGarments),BorderLayout.CENTER);
-        results.add(selectFromResultsPanel(relevantGarments),BorderLayout.SOUTH);
+        results.add(selectFromResultsPanel(),BorderLayout.SOUTH);
         results.add(Box.createRigidArea(new Dimension(20,0)),BorderLayout.WEST);
         results.add(Box.createRigidArea(new Dimension(20,0)),BorderLayout.EAST);
         mainWindow.setContentPane(results);
@@ -159,67 +286,63 @@ public class GarmentSearcher {
     }
 
     /**
-     * The purpose of this method is to create a scroll panel that contains all the garment descriptors relevant to the user's search.
+     * The purpose of this method is to create a scroll panel that lists all the garments relevant to the user's search.
+     * The list only describes the garments that are scrolled into view, so it stays responsive however many garments match.
      * @param relevantGarments a list of garments that match the user's search criteria.
      * @return a scroll panel containing the descriptions of the garments that match the user's search criteria.
      */
     public static JScrollPane generateGarmentDescriptions(List<Garment> relevantGarments){
-        // Create a list of options for the user to select from in a drop-down box.
-        String[] options = new String[relevantGarments.size()];
-
-        // Create a panel for the descriptions.
-        JPanel garmentDescriptions = new JPanel();
-        garmentDescriptions.setBorder(BorderFactory.createTitledBorder("AWESOME! These items match your search: "));
-        garmentDescriptions.setLayout(new BoxLayout(garmentDescriptions,BoxLayout.Y_AXIS));
-        garmentDescriptions.add(Box.createRigidArea(new Dimension(0,10)));
-
-        //loop through the garments, generating a description and adding it to the description panel.
-        for (int i = 0; i < relevantGarments.size(); i++) {
-            JTextArea garmentDescription = new JTextArea();
-            if (type.equals(GarmentType.HOODIE)) garmentDescription = new JTextArea(relevantGarments.get(i).getGarmentInformation(hoodieFeatures));
-            if (type.equals(GarmentType.T_SHIRT)) garmentDescription = new JTextArea(relevantGarments.get(i).getGarmentInformation(tShirtFeatures));
-            garmentDescription.setEditable(false);
-            garmentDescription.setLineWrap(true);
-            garmentDescription.setWrapStyleWord(true);
-            garmentDescriptions.add(garmentDescription);
-
-            // Add the garment names to the list for the drop-down box.
-            options[i] = relevantGarments.get(i).getName();
-        }
-        // Create the drop-down list.
-        optionsCombo = new JComboBox<>(options);
+        resultsModel = new GarmentListModel(relevantGarments);
+
+        // Create the list, always as wide as the scroll panel so that descriptions wrap rather than scroll sideways.
+        GarmentCellRenderer renderer = new GarmentCellRenderer(type.equals(GarmentType.HOODIE) ? hoodieFeatures : tShirtFeatures);
+        resultsList = new JList<>(resultsModel){
+            @Override
+            public boolean getScrollableTracksViewportWidth() {
+                return true;
+            }
+        };
+        resultsList.setCellRenderer(renderer);
+        resultsList.setFixedCellHeight(renderer.getRowHeight());
+        resultsList.setFixedCellWidth(250);
+        resultsList.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+
+        // Double-clicking a garment is the same as selecting it and choosing to buy it.
+        resultsList.addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                if(e.getClickCount()==2 && resultsList.getSelectedValue()!=null) checkUserSelection();
+            }
+        });
 
         // Add a scroll bar
-        JScrollPane verticalScrollBar = new JScrollPane(garmentDescriptions);
+        JScrollPane verticalScrollBar = new JScrollPane(resultsList);
+        verticalScrollBar.setBorder(BorderFactory.createTitledBorder("AWESOME! These items match your search: "));
         verticalScrollBar.setPreferredSize(new Dimension(300, 450));
         verticalScrollBar.setVerticalScrollBarPolicy(JScrollPane.VERTICAL_SCROLLBAR_AS_NEEDED);
-        SwingUtilities.invokeLater(() -> verticalScrollBar.getViewport().setViewPosition( new Point(0, 0) ));
 
         return verticalScrollBar;
     }
 
     /**
-     * The purpose of this method is to create the drop-down list panel where the user can select a garment to buy.
-     * @param relevantGarments a list of Garment objects that are relevant to the user's search criteria.
-     * @return a JPanel that contains a drop-down list where the user can elect to make a purchase.
+     * The purpose of this method is to create the panel where the user can buy the garment selected in the results list.
+     * @return a JPanel that contains a button where the user can elect to make a purchase.
      */
-    public static JPanel selectFromResultsPanel(List<Garment> relevantGarments){
+    public static JPanel selectFromResultsPanel(){
         // Allow the user to start a new search if they don't like their search results.
         JLabel noneMessage = new JLabel("If you don't like these items, close to exit, or search again with different criteria");
         JButton editSearchCriteriaButton = new JButton("Search again");
         ActionListener actionListenerEditCriteria = e -> reGenerateSearchView();
         editSearchCriteriaButton.addActionListener(actionListenerEditCriteria);
 
-        // The user can also select from one of the search result options.
-        String defaultOption = "Select your favourite item";
-        optionsCombo.addItem(defaultOption);
-        optionsCombo.setSelectedItem(defaultOption);
-        ActionListener actionListener = e -> checkUserSelection(relevantGarments);
-        optionsCombo.addActionListener(actionListener);
+        // The user can also buy the item they have selected from the search results.
+        JButton buyButton = new JButton("Buy selected item");
+        ActionListener actionListener = e -> checkUserSelection();
+        buyButton.addActionListener(actionListener);
 
-        // Create a JPanel for the button and the drop-down list
+        // Create a JPanel for the buttons
         JPanel buttonOptionPanel = new JPanel();
-        buttonOptionPanel.add(optionsCombo);
+        buttonOptionPanel.add(buyButton);
         buttonOptionPanel.add(editSearchCriteriaButton);
 
         // Create JPanel that displays everything to the user
@@ -235,23 +358,17 @@ public class GarmentSearcher {
     }
 
     /**
-     * The purpose of this method is to get the Garment information of the selected garment and have the user place their order.
-     * @param relevantGarments a list of garments relevant to the user's search criteria.
+     * The purpose of this method is to get the garment selected in the results list and have the user place their order.
      */
-    public static void checkUserSelection(List<Garment> relevantGarments){
-        String decision = (String) optionsCombo.getSelectedItem();
-        assert decision != null;
-
-        for (Garment g : relevantGarments) {
-            if (decision.equals(g.getName())) {
-                int answer = JOptionPane.showConfirmDialog(mainWindow, "Would you like to place an order for " + g.getName() + "?");
-                if(answer == JOptionPane.YES_OPTION) contactForm(g);
-                if(answer == JOptionPane.NO_OPTION) reGenerateSearchView();
-                if(answer == JOptionPane.CANCEL_OPTION) showResults(relevantGarments);
-                break;
-            }
+    public static void checkUserSelection(){
+        Garment g = resultsList.getSelectedValue();
+        if(g==null){
+            JOptionPane.showMessageDialog(mainWindow, "Please select the item you would like to buy.","No item selected",JOptionPane.INFORMATION_MESSAGE,icon);
+            return;
         }
-
+        int answer = JOptionPane.showConfirmDialog(mainWindow, "Would you like to place an order for " + g.getName() + "?");
+        if(answer == JOptionPane.YES_OPTION) contactForm(g);
+        if(answer == JOptionPane.NO_OPTION) reGenerateSearchView();
     }
 
     /**
@@ -369,7 +486,12 @@ public class GarmentSearcher {
 
     public static void confirmOrder(Garment chosenGarment){
         int answer = JOptionPane.showConfirmDialog(mainWindow,"Your details have been saved.\n Would you like to submit the order now?");
-        if(answer == JOptionPane.YES_OPTION) submitOrder(geek, chosenGarment);
+        if(answer == JOptionPane.YES_OPTION){
+            // The inventory may have been reloaded while the order form was filled in, so order the garment as it is now.
+            Garment currentGarment = searchService.findByProductCode(chosenGarment.getProductCode());
+            if(currentGarment==null) JOptionPane.showMessageDialog(mainWindow, "Sorry, "+chosenGarment.getName()+" is no longer available.","Item unavailable",JOptionPane.INFORMATION_MESSAGE,icon);
+            else submitOrder(geek, currentGarment);
+        }
         if(answer == JOptionPane.NO_OPTION) reGenerateSearchView();
         if(answer == JOptionPane.CANCEL_OPTION) return;
         reGenerateSearchView();
@@ -378,6 +500,7 @@ public class GarmentSearcher {
      * The purpose of this method is to create a fresh search view for the user.
      */
     public static void reGenerateSearchView(){
+        cancelSearch();
         searchView = generateFinalSearchView();
         mainWindow.setContentPane(searchView);
         mainWindow.revalidate();
@@ -496,132 +619,110 @@ public class GarmentSearcher {
 //        return new Geek(name,phoneNumber);
 //    }
 
+    /**
+     * The purpose of this method is to record an order in the order journal and tell the user once it has been recorded.
+     * The order is written in the background, so this returns straight away.
+     * @param geek the customer placing the order.
+     * @param Garment the garment being ordered.
+     */
     public static void submitOrder(Geek geek, Garment Garment) {
-        String filePath = geek.getName().replace(" ","_")+"_"+Garment.getProductCode()+".txt";
-        Path path = Path.of(filePath);
-        String lineToWrite = "Order details:\n\t" +
-                "Name: "+geek.getName()+
-                "\n\tPhone number: 0"+geek.getPhoneNumber()+
-                "\n\tEmail Address: "+geek.getEmailAddress()+
-                "\n\tItem: "+Garment.getName()+" ("+Garment.getProductCode()+")"+
-                //"\n\tSize: "+size;
-                "\n\n\tMessage: "+geek.getMessage();
+        orderJournal.submit(geek, Garment).whenComplete((time, error) -> {
+            if(error==null) popularity.recordOrder(Garment, time);
+            SwingUtilities.invokeLater(() -> {
+                if(error==null){
+                    JOptionPane.showMessageDialog(mainWindow,"Thank you for your order.\nOne of our friendly staff will be in touch shortly.", "Order Placed", JOptionPane.INFORMATION_MESSAGE,icon);
+                    return;
+                }
+                System.out.println("Order could not be placed. \nError message: "+error.getMessage());
+                JOptionPane.showMessageDialog(mainWindow,"Sorry, your order for "+Garment.getName()+" could not be placed.\nPlease try again shortly.", "Order Not Placed", JOptionPane.ERROR_MESSAGE,icon);
+            });
+        });
+    }
+
+    /**
+     * The purpose of this method is to open the order journal.
+     * @param ordersPath the directory the order journal is kept in.
+     * @return the opened order journal.
+     */
+    public static OrderJournal openOrderJournal(String ordersPath) {
+        OrderJournal journal = null;
         try {
-            Files.writeString(path, lineToWrite);
-            JOptionPane.showMessageDialog(mainWindow,"Thank you for your order.\nOne of our friendly staff will be in touch shortly.", "Order Placed", JOptionPane.INFORMATION_MESSAGE,icon);
+            journal = OrderJournal.open(Path.of(ordersPath), orderSync);
         }catch (IOException io){
-            System.out.println("Order could not be placed. \nError message: "+io.getMessage());
+            System.out.println("Order journal could not be opened. \nError message: "+io.getMessage());
             System.exit(0);
         }
+        return journal;
     }
 
-    public static Inventory loadInventory(String filePath) {
-        Inventory allGarments = new Inventory();
-        Path path = Path.of(filePath);
-        List<String> fileContents = null;
+    /**
+     * The purpose of this method is to load the popularity of each garment and brand from its last checkpoint, catching
+     * up on any orders placed since then.
+     * @param popularityPath the location of the popularity checkpoint.
+     * @param ordersPath the directory the order journal is kept in.
+     * @param searchService the inventory the ordered garments are looked up in.
+     * @return the popularity of each garment and brand. If the order journal cannot be read, nothing is counted as popular.
+     */
+    public static PopularityTracker openPopularity(String popularityPath, String ordersPath, SearchService searchService) {
         try {
-            fileContents = Files.readAllLines(path);
+            return PopularityTracker.open(Path.of(popularityPath), PopularityTracker.DEFAULT_HALF_LIFE_DAYS, Path.of(ordersPath),
+                    searchService::findByProductCode);
         }catch (IOException io){
-            System.out.println("File could not be found");
-            System.exit(0);
+            System.out.println("Order history could not be read, results will not be ranked by popularity. \nError message: "+io.getMessage());
+            return new PopularityTracker(null, PopularityTracker.DEFAULT_HALF_LIFE_DAYS);
         }
-        for(int i=1;i<fileContents.size();i++){
-            String[] info = fileContents.get(i).split("\\[");
-            String[] singularInfo = info[0].split(",");
-            String sizesRaw = info[1].replace("]","");
-            String description = info[2].replace("]","");
-
-            GarmentType garmentType = null;
-            try {
-                garmentType = GarmentType.valueOf(singularInfo[0].replace("-","_").toUpperCase()); //error catching
-            }catch (IllegalArgumentException e){
-                System.out.println("Error in file. type data could not be parsed for garment on line "+(i+1)+". Terminating. \nError message: "+e.getMessage());
-                System.exit(0);
-            }
-            String name = singularInfo[1];
-
-            long productCode = 0;
-            try{
-                productCode = Long.parseLong(singularInfo[2]);
-            }catch (NumberFormatException n) {
-                System.out.println("Error in file. Product code could not be parsed for garment on line "+(i+1)+". Terminating. \nError message: "+n.getMessage());
-                System.exit(0);
-            }
-
-            double price = 0;
-            try{
-                price = Double.parseDouble(singularInfo[3]);
-            }catch (NumberFormatException n){
-                System.out.println("Error in file. Price could not be parsed for garment on line "+(i+1)+". Terminating. \nError message: "+n.getMessage());
-                System.exit(0);
-            }
-
-            String brand = singularInfo[4];
-            availableBrands.add(brand);
-
-            Material material = null;
-            try{
-                material = Material.valueOf(singularInfo[5].toUpperCase().replace(" ","_"));
-            }catch (IllegalArgumentException e){
-                System.out.println("Error in file. Material data could not be parsed for garment on line "+(i+1)+". Terminating. \nError message: "+e.getMessage());
-                System.exit(0);
-            }
-            Neckline neckline = null;
-            try{
-                neckline = Neckline.valueOf(singularInfo[6].toUpperCase());
-            }catch (IllegalArgumentException e){
-                System.out.println("Error in file. Neckline data could not be parsed for t-shirt on line "+(i+1)+". Terminating. \nError message: "+e.getMessage());
-                System.exit(0);
-            }
-            SleeveType sleeveType = null;
-            try{
-                sleeveType = SleeveType.valueOf(singularInfo[7].toUpperCase().replace(" ","_"));
-            }catch (IllegalArgumentException e){
-                System.out.println("Error in file. Sleeve type data could not be parsed for t-shirt on line "+(i+1)+". Terminating. \nError message: "+e.getMessage());
-                System.exit(0);
-            }
-            PocketType pocketType = null;
-            try{
-                pocketType = PocketType.valueOf(singularInfo[8].toUpperCase());
-            }catch (IllegalArgumentException e){
-                System.out.println("Error in file. Pocket type data could not be parsed for hoodie on line "+(i+1)+". Terminating. \nError message: "+e.getMessage());
-                System.exit(0);
-            }
-            HoodieStyle hoodieStyle = null;
-            try{
-                hoodieStyle = HoodieStyle.valueOf(singularInfo[9].toUpperCase().replace(" ","_"));
-            }catch (IllegalArgumentException e){
-                System.out.println("Error in file. Style data could not be parsed for hoodie on line "+(i+1)+". Terminating. \nError message: "+e.getMessage());
-                System.exit(0);
-            }
-
-            Set<Size> sizes = new HashSet<>();
-            for(String s: sizesRaw.split(",")){
-                Size size = Size.S;
-                try {
-                    size = Size.valueOf(s);
-                }catch (IllegalArgumentException e){
-                    System.out.println("Error in file. Size data could not be parsed for t-shirt on line "+(i+1)+". Terminating. \nError message: "+e.getMessage());
-                    System.exit(0);
-                }
-                sizes.add(size);
-            }
+    }
 
+    /**
+     * The purpose of this method is to write every order already placed, and then save their popularity, as the app exits.
+     */
+    public static void shutDown(){
+        orderJournal.close();
+        // Nothing has been ordered if the app is closed before the inventory has loaded.
+        if(popularity!=null) popularity.checkpoint();
+    }
 
-            Map<Filter,Object> filterMap = new LinkedHashMap<>();
-            filterMap.put(Filter.GARMENT_TYPE,garmentType);
-            filterMap.put(Filter.BRAND,availableBrands);
-            filterMap.put(Filter.MATERIAL,material);
-            filterMap.put(Filter.SIZE,sizes);
-            if(!neckline.equals(Neckline.NA)) filterMap.put(Filter.NECKLINE,neckline);
-            if(!sleeveType.equals(SleeveType.NA)) filterMap.put(Filter.SLEEVE_TYPE,sleeveType);
-            if(!hoodieStyle.equals(HoodieStyle.NA)) filterMap.put(Filter.HOODIE_STYLE,hoodieStyle);
-            if(!pocketType.equals(PocketType.NA)) filterMap.put(Filter.POCKET_TYPE,pocketType);
+    /**
+     * The purpose of this method is to replace the current inventory with a newly loaded one.
+     * Searches already running finish on the inventory they started with; later searches and search views use the new one.
+     * @param reloaded the new inventory, with its indexes already built.
+     */
+    public static void publishInventory(Inventory reloaded){
+        searchService.setInventory(reloaded);
+    }
 
-            GarmentSpecs dreamGarment = new GarmentSpecs(filterMap);
+    /**
+     * The purpose of this method is to open the compiled catalog, if it exists and is newer than the inventory file.
+     * @param catalogPath the location of the catalog file.
+     * @param filePath the location of the inventory file the catalog was compiled from.
+     * @return an Inventory backed by the catalog, or null if the inventory file should be loaded instead.
+     */
+    public static Inventory openCatalog(String catalogPath, String filePath) {
+        Path catalog = Path.of(catalogPath);
+        try {
+            if(!Files.exists(catalog) || Files.getLastModifiedTime(catalog).compareTo(Files.getLastModifiedTime(Path.of(filePath)))<0) return null;
+            return Inventory.openCatalog(catalog);
+        }catch (IOException io){
+            System.out.println("Catalog could not be opened, loading the inventory file instead. \nError message: "+io.getMessage());
+            return null;
+        }
+    }
 
-            Garment Garment = new Garment(name,productCode,price,description,dreamGarment);
-            allGarments.addGarment(Garment);
+    /**
+     * The purpose of this method is to load the inventory file into an Inventory.
+     * @param filePath the location of the inventory file.
+     * @return an Inventory containing every garment in the file.
+     */
+    public static Inventory loadInventory(String filePath) {
+        Inventory allGarments = new Inventory();
+        try {
+            allGarments.addGarments(InventoryParser.parse(Path.of(filePath)));
+        }catch (IOException io){
+            System.out.println("File could not be found");
+            System.exit(0);
+        }catch (IllegalArgumentException e){
+            System.out.println(e.getMessage()+"\nTerminating.");
+            System.exit(0);
         }
         return allGarments;
     }
@@ -1,20 +1,118 @@
 import java.util.*;
 
 public class GarmentSpecs {
+    private static final Filter[] FILTERS = Filter.values();
+    // The constants of each enum-valued filter, indexed by Filter ordinal; null for the other filters.
+    private static final Object[][] ENUM_CONSTANTS = new Object[FILTERS.length][];
+    static {
+        for(Filter key: FILTERS) if(key.isEnumValued()) ENUM_CONSTANTS[key.ordinal()] = key.getValueType().getEnumConstants();
+    }
+
     private final double minPrice;
     private final double maxPrice;
-    private final Map<Filter,Object> filterMap;
+    // Single-valued filters. Multi-valued enum filters (e.g. sizes) are only held as bitmasks in valueMasks.
+    private final Map<Filter,Object> filterMap = new EnumMap<>(Filter.class);
+
+    // A bit per Filter ordinal, set if this specification has a value for that filter.
+    private final long specifiedFilters;
+    // A bit per Filter ordinal, set if that filter holds a set of enum values that is stored only as a bitmask.
+    private long multiValuedFilters;
+    // For enum-valued filters, a bit per enum ordinal that this specification holds, indexed by Filter ordinal.
+    // Every filter enum has at most 16 constants, so a short per filter is enough.
+    private final short[] valueMasks = new short[Filter.values().length];
+    // The BrandDictionary id of a single brand, e.g. a garment's own brand. -1 if there is no brand, it is a Set of brands,
+    // e.g. the brands chosen in a search, or it has no id yet. A brand that had no id when this specification was created
+    // is held in filterMap, and its id is recorded here once internBrandId gives it one. Threads that have not yet seen
+    // the id look it up again and find the same one, so it is not synchronized.
+    private int brandId = -1;
+
+    // Compiled form of this specification when it is used as a search query, built on first use.
+    private GarmentMatcher matcher;
 
     public GarmentSpecs(Map<Filter,Object> filterMap, double minPrice, double maxPrice) {
         this.minPrice=minPrice;
         this.maxPrice=maxPrice;
-        this.filterMap=new LinkedHashMap<>(filterMap);
+        this.specifiedFilters=storeFilters(filterMap);
     }
 
     public GarmentSpecs(Map<Filter,Object> filterMap) {
-        this.filterMap=new LinkedHashMap<>(filterMap);
-        minPrice = -1;
-        maxPrice = -1;
+        this(filterMap, -1, -1);
+    }
+
+    /**
+     * Rebuilds a garment's specification from its stored form, e.g. a row of a GarmentStore, without building a map of
+     * its filters first. Sizes are held as a set; every other enum-valued filter holds a single value.
+     * @param specifiedFilters a bit per Filter ordinal, set if the garment has a value for that filter.
+     * @param valueMasks for enum-valued filters, the bitmask of the enum ordinals the garment holds, indexed by Filter ordinal.
+     * @param brandId the BrandDictionary id of the garment's brand, or -1 if it has none.
+     */
+    GarmentSpecs(long specifiedFilters, long[] valueMasks, int brandId) {
+        this.minPrice=-1;
+        this.maxPrice=-1;
+        this.specifiedFilters=specifiedFilters;
+        this.brandId=brandId;
+        for(long specified = specifiedFilters; specified!=0; specified &= specified-1){
+            int f = Long.numberOfTrailingZeros(specified);
+            if(ENUM_CONSTANTS[f]==null) continue;
+            this.valueMasks[f] = (short) valueMasks[f];
+            if(FILTERS[f]==Filter.SIZE) multiValuedFilters |= 1L << f;
+            else filterMap.put(FILTERS[f], ENUM_CONSTANTS[f][Long.numberOfTrailingZeros(valueMasks[f])]);
+        }
+    }
+
+    /**
+     * The purpose of this method is to record the enum values of each filter as bitmasks so they can be compared without allocating.
+     * Sets of enum values are kept only as their bitmask rather than as a Collection.
+     * A single brand is kept only as its BrandDictionary id, if it has one. The brand is only looked up, so a search for a
+     * brand that no garment has does not add it to the dictionary.
+     * @param filters the filters and values of this specification.
+     * @return a bitmask of the filters that this specification has a value for.
+     */
+    private long storeFilters(Map<Filter,Object> filters){
+        long specified = 0;
+        for(Map.Entry<Filter,Object> entry: filters.entrySet()){
+            Filter key = entry.getKey();
+            specified |= 1L << key.ordinal();
+            int id = key==Filter.BRAND && entry.getValue() instanceof String brand ? BrandDictionary.find(brand) : -1;
+            if(id>=0) brandId = id;
+            else if(!key.isEnumValued()) filterMap.put(key, entry.getValue());
+            else {
+                valueMasks[key.ordinal()] = (short) enumMask(entry.getValue());
+                if(entry.getValue() instanceof Collection<?>) multiValuedFilters |= 1L << key.ordinal();
+                else filterMap.put(key, entry.getValue());
+            }
+        }
+        return specified;
+    }
+
+    /**
+     * The purpose of this method is to convert the bitmask of a multi-valued enum filter back into a Set of its values.
+     * @param key the multi-valued filter.
+     * @return a new Set containing the enum values in the filter's bitmask.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private Set<?> decodeValues(Filter key){
+        Class type = key.getValueType();
+        Set values = EnumSet.noneOf(type);
+        Object[] constants = type.getEnumConstants();
+        for(long mask = getValueMask(key); mask!=0; mask &= mask-1){
+            values.add(constants[Long.numberOfTrailingZeros(mask)]);
+        }
+        return values;
+    }
+
+    /**
+     * The purpose of this method is to convert an enum value, or a Collection of enum values, into a bitmask of their ordinals.
+     * @param value the value of a filter.
+     * @return a bitmask of the enum ordinals, or 0 if the value is not an enum.
+     */
+    static long enumMask(Object value){
+        if(value instanceof Enum<?> e) return 1L << e.ordinal();
+        long mask = 0;
+        if(value instanceof Collection<?> values){
+            for(Object v: values) if(v instanceof Enum<?> e) mask |= 1L << e.ordinal();
+        }
+        return mask;
     }
 
     public double getMinPrice() {
@@ -24,11 +122,54 @@ public class GarmentSpecs {
         return maxPrice;
     }
 
+    /**
+     * The purpose of this method is to return every filter of this specification, with sets of enum values decoded from their bitmasks.
+     * This builds a new map, so the search path works from the bitmasks instead.
+     * @return a new Map of the filters to their values.
+     */
     public Map<Filter, Object> getAllFilters() {
-        return new HashMap<>(filterMap);
+        Map<Filter,Object> allFilters = new EnumMap<>(Filter.class);
+        allFilters.putAll(filterMap);
+        if(brandId>=0) allFilters.put(Filter.BRAND, BrandDictionary.nameOf(brandId));
+        for(long mask = multiValuedFilters; mask!=0; mask &= mask-1){
+            Filter key = Filter.values()[Long.numberOfTrailingZeros(mask)];
+            allFilters.put(key, decodeValues(key));
+        }
+        return allFilters;
     }
 
-    public Object getFilter(Filter key){return getAllFilters().get(key);}
+    public Object getFilter(Filter key){
+        if((multiValuedFilters & (1L << key.ordinal()))!=0) return decodeValues(key);
+        if(key==Filter.BRAND && brandId>=0) return BrandDictionary.nameOf(brandId);
+        return filterMap.get(key);
+    }
+
+    public boolean hasFilter(Filter key){
+        return (specifiedFilters & (1L << key.ordinal())) != 0;
+    }
+
+    long getSpecifiedFilters() {
+        return specifiedFilters;
+    }
+
+    int getBrandId() {
+        return brandId;
+    }
+
+    /**
+     * The purpose of this method is to get the BrandDictionary id of a garment's brand, giving the brand an id if it did
+     * not have one when the garment was created, and keeping the id so it is only looked up once. Only for garments being
+     * added to the inventory, never for searches; once a garment is in the inventory, getBrandId gives the same id.
+     * @return the brand's id, or -1 if the garment has no single brand.
+     */
+    int internBrandId() {
+        if(brandId<0 && filterMap.get(Filter.BRAND) instanceof String brand) brandId = BrandDictionary.idOf(brand);
+        return brandId;
+    }
+
+    long getValueMask(Filter key) {
+        return valueMasks[key.ordinal()] & 0xFFFF;
+    }
 
     public String getGarmentSpecInfo(Set<Filter> features){
         StringBuilder description = new StringBuilder();
@@ -36,23 +177,17 @@ public class GarmentSpecs {
         return description.toString();
     }
 
-    public boolean matches(GarmentSpecs garmentSpecs){
-        for(Filter key : garmentSpecs.getAllFilters().keySet()) {
-            if(this.getAllFilters().containsKey(key)){
-                if(getFilter(key) instanceof Collection<?> && garmentSpecs.getFilter(key) instanceof Collection<?>){
-                    Set<Object> intersect = new HashSet<>((Collection<?>) garmentSpecs.getFilter(key));
-                    intersect.retainAll((Collection<?>) getFilter(key));
-                    if(intersect.size()==0) return false;
-                }
-                else if(garmentSpecs.getFilter(key) instanceof Collection<?>){
-                    Set<Object> items = new HashSet<>((Collection<?>) garmentSpecs.getFilter(key));
-                    if(!items.contains(this.getFilter(key))) return false;
-                }
-                else if(!getFilter(key).equals(garmentSpecs.getFilter(key))) return false;
-            }
+    /**
+     * The purpose of this method is to return this specification compiled into a matcher that can be applied to many garments.
+     * @return the compiled GarmentMatcher for this search query.
+     */
+    public GarmentMatcher compile(){
+        if(matcher==null) matcher = new GarmentMatcher(this);
+        return matcher;
+    }
 
-        }
-        return true;
+    public boolean matches(GarmentSpecs garmentSpecs){
+        return compile().matchesSpecs(garmentSpecs);
     }
 
 
@@ -0,0 +1,209 @@
+import java.util.*;
+import java.util.function.IntPredicate;
+
+/**
+ * An immutable block of garments held column by column in primitive arrays rather than as Garment objects: a byte per
+ * garment for each single-valued enum filter, a bitmask of sizes, a BrandDictionary id and a price in cents. Checking a
+ * garment against a search reads a few neighbouring array entries instead of following references through the garment,
+ * its specifications and their map. A Garment object is only created for a garment once it is read, e.g. shown in the
+ * results or looked up by its product code, and is then kept.
+ */
+final class GarmentStore {
+
+    // The single-valued enum filters, each held as a column of enum ordinals.
+    private static final Filter[] ENUM_COLUMNS = {Filter.GARMENT_TYPE, Filter.MATERIAL, Filter.NECKLINE,
+            Filter.SLEEVE_TYPE, Filter.HOODIE_STYLE, Filter.POCKET_TYPE};
+    private static final Filter[] FILTERS = Filter.values();
+
+    // A bit per Filter ordinal, set if the garment has a value for that filter.
+    private final byte[] specified;
+    // The enum ordinal of each garment's value, one column per filter in ENUM_COLUMNS.
+    private final byte[][] enumColumns = new byte[ENUM_COLUMNS.length][];
+    // Bitmask of Size ordinals.
+    private final short[] sizes;
+    // BrandDictionary id of the brand, or -1 if the garment has none.
+    private final int[] brands;
+    // Prices in whole cents. A garment's price is already whole cents, and no more than Garment.MAX_PRICE.
+    private final int[] pricesInCents;
+    private final long[] productCodes;
+    private final String[] names;
+    private final String[] descriptions;
+    // One more than the largest BrandDictionary id in the store.
+    private final int brandIdBound;
+    // The Garment object of each garment that has been read, or null if it has not been created yet.
+    private final Garment[] created;
+
+    GarmentStore(Garment[] garments) {
+        int size = garments.length;
+        specified = new byte[size];
+        for(int c = 0; c < ENUM_COLUMNS.length; c++) enumColumns[c] = new byte[size];
+        sizes = new short[size];
+        brands = new int[size];
+        pricesInCents = new int[size];
+        productCodes = new long[size];
+        names = new String[size];
+        descriptions = new String[size];
+        created = new Garment[size];
+        int maxBrandId = -1;
+        for(int row = 0; row < size; row++){
+            Garment garment = garments[row];
+            GarmentSpecs specs = garment.getGarmentSpecs();
+            specified[row] = (byte) specs.getSpecifiedFilters();
+            for(int c = 0; c < ENUM_COLUMNS.length; c++){
+                long mask = specs.getValueMask(ENUM_COLUMNS[c]);
+                enumColumns[c][row] = (byte) (mask==0 ? 0 : Long.numberOfTrailingZeros(mask));
+            }
+            sizes[row] = (short) specs.getValueMask(Filter.SIZE);
+            int brandId = specs.internBrandId();
+            brands[row] = brandId;
+            maxBrandId = Math.max(maxBrandId, brandId);
+            pricesInCents[row] = Math.toIntExact(Math.round(garment.getPrice()*100));
+            productCodes[row] = garment.getProductCode();
+            names[row] = garment.getName();
+            descriptions[row] = garment.getDescription();
+        }
+        brandIdBound = maxBrandId+1;
+    }
+
+    int size(){
+        return specified.length;
+    }
+
+    double getPrice(int row){
+        return pricesInCents[row]/100.0;
+    }
+
+    /**
+     * @param row the position of a garment in the store.
+     * @return a bit per Filter ordinal, set if the garment has a value for that filter.
+     */
+    int getSpecifiedFilters(int row){
+        return specified[row] & 0xFF;
+    }
+
+    /**
+     * @param key an enum-valued filter.
+     * @param row the position of a garment in the store.
+     * @return the bitmask of the enum ordinals the garment holds for the filter, or 0 if it has no value for it.
+     */
+    long getValueMask(Filter key, int row){
+        if((specified[row] & (1 << key.ordinal()))==0) return 0;
+        if(key==Filter.SIZE) return sizes[row] & 0xFFFF;
+        return 1L << enumColumns[columnOf(key)][row];
+    }
+
+    /**
+     * @param row the position of a garment in the store.
+     * @return the BrandDictionary id of the garment's brand, or -1 if it has none.
+     */
+    int getBrandId(int row){
+        return brands[row];
+    }
+
+    long getProductCode(int row){
+        return productCodes[row];
+    }
+
+    int getBrandIdBound(){
+        return brandIdBound;
+    }
+
+    // The columns themselves, for a ScanKernel to read. They must not be changed.
+
+    byte[] getSpecifiedColumn(){
+        return specified;
+    }
+
+    byte[] getEnumColumn(Filter key){
+        return enumColumns[columnOf(key)];
+    }
+
+    short[] getSizeColumn(){
+        return sizes;
+    }
+
+    int[] getBrandColumn(){
+        return brands;
+    }
+
+    int[] getPriceColumn(){
+        return pricesInCents;
+    }
+
+    private static int columnOf(Filter key){
+        for(int c = 0; c < ENUM_COLUMNS.length; c++) if(ENUM_COLUMNS[c]==key) return c;
+        throw new IllegalArgumentException(key+" is not a single-valued enum filter");
+    }
+
+    /**
+     * The purpose of this method is to compile a search into a test of a single garment of the store, reading only the
+     * columns the search constrains, in the order the matcher checks them.
+     * @param matcher the compiled search.
+     * @return a predicate that is true for the positions of the matching garments.
+     */
+    IntPredicate rowMatcher(GarmentMatcher matcher){
+        Filter[] order = matcher.getOrder();
+        // The column of each enum filter, in the order they are checked; null for sizes and brands.
+        byte[][] columns = new byte[order.length][];
+        for(int k = 0; k < order.length; k++){
+            if(order[k]!=Filter.SIZE && order[k]!=Filter.BRAND) columns[k] = enumColumns[columnOf(order[k])];
+        }
+        return row -> {
+            if(!matcher.acceptsPrice(pricesInCents[row]/100.0)) return false;
+            int garmentFilters = specified[row];
+            for(int k = 0; k < order.length; k++){
+                Filter key = order[k];
+                if((garmentFilters & (1 << key.ordinal()))==0) continue;
+                boolean accepted = switch (key) {
+                    case SIZE -> matcher.acceptsMask(key, sizes[row] & 0xFFFF);
+                    case BRAND -> brands[row]<0 || matcher.acceptsBrandId(brands[row]);
+                    default -> matcher.acceptsMask(key, 1L << columns[k][row]);
+                };
+                if(!accepted) return false;
+            }
+            return true;
+        };
+    }
+
+    /**
+     * The purpose of this method is to add every garment in the store to a set of facet counts, reading the columns
+     * directly rather than creating Garment objects.
+     * @param facetCounts the counts to add to.
+     */
+    void countFacets(FacetCounts facetCounts){
+        long[] valueMasks = new long[FILTERS.length];
+        for(int row = 0; row < size(); row++){
+            for(int c = 0; c < ENUM_COLUMNS.length; c++) valueMasks[ENUM_COLUMNS[c].ordinal()] = 1L << enumColumns[c][row];
+            valueMasks[Filter.SIZE.ordinal()] = sizes[row] & 0xFFFF;
+            facetCounts.count(getPrice(row), getSpecifiedFilters(row), valueMasks, brands[row]);
+        }
+    }
+
+    /**
+     * The purpose of this method is to get the Garment object of one garment of the store, creating it the first time the
+     * garment is read, so reading it again neither creates another nor gives a different object. Two threads reading a
+     * garment for the first time may both create it, and either object may be kept; a Garment's fields are final, so a
+     * thread that finds the other's object sees it complete.
+     * @param row the position of the garment in the store.
+     * @return the Garment holding the garment's details.
+     */
+    Garment garment(int row){
+        Garment garment = created[row];
+        if(garment==null){
+            garment = create(row);
+            created[row] = garment;
+        }
+        return garment;
+    }
+
+    private Garment create(int row){
+        long[] valueMasks = new long[FILTERS.length];
+        for(int c = 0; c < ENUM_COLUMNS.length; c++) valueMasks[ENUM_COLUMNS[c].ordinal()] = 1L << enumColumns[c][row];
+        valueMasks[Filter.SIZE.ordinal()] = sizes[row] & 0xFFFF;
+        int garmentFilters = getSpecifiedFilters(row);
+        // A brand that was not a name is not kept by the store.
+        if(brands[row]<0) garmentFilters &= ~(1 << Filter.BRAND.ordinal());
+        GarmentSpecs garmentSpecs = new GarmentSpecs(garmentFilters, valueMasks, brands[row]);
+        return new Garment(names[row], productCodes[row], getPrice(row), descriptions[row], garmentSpecs);
+    }
+}
@@ -0,0 +1,220 @@
+import javax.imageio.ImageIO;
+import javax.swing.*;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+
+/**
+ * Loads images for display without holding up the event dispatch thread. Asking for an image returns an icon straight away,
+ * which paints a placeholder until the image has been read and scaled to its display size in the background, and then
+ * repaints itself. Icons are cached, most recently used first, up to a limit on the memory their images take, so an image
+ * shown again, e.g. each time the search view is rebuilt, is neither read nor scaled again.
+ */
+public class ImageCache {
+
+    public static final long DEFAULT_MAX_BYTES = 32L * 1024 * 1024;
+
+    // Reading and scaling images is mostly waiting on the disk, so a couple of threads keep up with the display.
+    private static final int LOADER_THREADS = 2;
+
+    private static final ImageCache shared = new ImageCache(DEFAULT_MAX_BYTES);
+
+    private final long maxBytes;
+    // Icons by file and display size, least recently used first. Guarded by this cache's lock.
+    private final LinkedHashMap<Key, CachedIcon> icons = new LinkedHashMap<>(16, 0.75f, true);
+    private long bytes;
+    private final ExecutorService loader = Executors.newFixedThreadPool(LOADER_THREADS, task -> {
+        Thread thread = new Thread(task, "image-loader");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private record Key(String path, int width, int height) {
+    }
+
+    /**
+     * @param maxBytes the most memory the cached images may take, counting 4 bytes per pixel.
+     */
+    public ImageCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * @return the cache shared by every view of the app.
+     */
+    public static ImageCache shared(){
+        return shared;
+    }
+
+    /**
+     * The purpose of this method is to get an icon for an image file, starting to load the image if it is not cached.
+     * @param path the location of the image file.
+     * @param width the width the image is displayed at.
+     * @param height the height the image is displayed at.
+     * @return an icon of the given size. A larger image is scaled down to fit, keeping its proportions, and centred.
+     */
+    public synchronized CachedIcon getIcon(String path, int width, int height){
+        Key key = new Key(path, width, height);
+        CachedIcon icon = icons.get(key);
+        if(icon==null){
+            icon = new CachedIcon(width, height);
+            icons.put(key, icon);
+            CachedIcon loading = icon;
+            loader.execute(() -> load(key, loading));
+        }
+        return icon;
+    }
+
+    public synchronized int size(){
+        return icons.size();
+    }
+
+    public synchronized long getBytes(){
+        return bytes;
+    }
+
+    private void load(Key key, CachedIcon icon){
+        BufferedImage image;
+        try {
+            BufferedImage source = ImageIO.read(new File(key.path()));
+            if(source==null) throw new IOException("unsupported image format");
+            image = scaleToFit(source, key.width(), key.height());
+        }catch (IOException io){
+            System.out.println("Image "+key.path()+" could not be loaded. \nError message: "+io.getMessage());
+            // Keep showing the placeholder, but let the next request for the image try again.
+            synchronized (this){
+                if(icon.cached) icons.remove(key);
+                icon.cached = false;
+            }
+            return;
+        }
+        synchronized (this){
+            // An icon dropped from the cache while it was loading still gets its image, but no longer counts towards the limit.
+            if(icon.cached){
+                icon.bytes = 4L*image.getWidth()*image.getHeight();
+                bytes += icon.bytes;
+                evict();
+            }
+        }
+        icon.setImage(image);
+    }
+
+    /**
+     * The purpose of this method is to drop the least recently used loaded icons until the images fit within the limit.
+     * Icons still loading take no memory yet, so they are kept. Must be called while holding the lock.
+     */
+    private void evict(){
+        Iterator<CachedIcon> leastRecentFirst = icons.values().iterator();
+        while(bytes>maxBytes && leastRecentFirst.hasNext()){
+            CachedIcon icon = leastRecentFirst.next();
+            if(icon.bytes==0) continue;
+            leastRecentFirst.remove();
+            icon.cached = false;
+            bytes -= icon.bytes;
+        }
+    }
+
+    /**
+     * The purpose of this method is to scale an image down to fit within a box, keeping its proportions.
+     * Large reductions are made in halving steps, which looks much better than a single bilinear step.
+     * @param source the full-size image.
+     * @param maxWidth the width of the box.
+     * @param maxHeight the height of the box.
+     * @return the scaled image, or the image unchanged if it already fits.
+     */
+    private static BufferedImage scaleToFit(BufferedImage source, int maxWidth, int maxHeight){
+        double scale = Math.min(1, Math.min((double) maxWidth/source.getWidth(), (double) maxHeight/source.getHeight()));
+        int width = Math.max(1, (int) Math.round(source.getWidth()*scale));
+        int height = Math.max(1, (int) Math.round(source.getHeight()*scale));
+        BufferedImage scaled = source;
+        do {
+            int stepWidth = Math.max(width, scaled.getWidth()/2);
+            int stepHeight = Math.max(height, scaled.getHeight()/2);
+            BufferedImage step = new BufferedImage(stepWidth, stepHeight, BufferedImage.TYPE_INT_ARGB);
+            Graphics2D g = step.createGraphics();
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.drawImage(scaled, 0, 0, stepWidth, stepHeight, null);
+            g.dispose();
+            scaled = step;
+        }while(scaled.getWidth()!=width || scaled.getHeight()!=height);
+        return scaled;
+    }
+
+    /**
+     * An icon of a fixed size that paints a placeholder until its image is ready. Only painted and told about on the
+     * event dispatch thread.
+     */
+    public static final class CachedIcon implements Icon {
+        private final int width;
+        private final int height;
+        private BufferedImage image;
+        // The components that have painted the placeholder, to be repainted when the image is ready.
+        private final Set<Component> waiting = Collections.newSetFromMap(new WeakHashMap<>());
+        private final List<Consumer<Image>> onLoad = new ArrayList<>();
+
+        // Guarded by the cache's lock.
+        private boolean cached = true;
+        private long bytes;
+
+        private CachedIcon(int width, int height) {
+            this.width = width;
+            this.height = height;
+        }
+
+        /**
+         * @return the image, or null if it is not ready yet.
+         */
+        public Image getImage(){
+            return image;
+        }
+
+        /**
+         * The purpose of this method is to do something with the image once it is ready, e.g. make it the window's icon.
+         * May be called from any thread.
+         * @param action called on the event dispatch thread with the image, as soon as it is ready.
+         */
+        public void whenLoaded(Consumer<Image> action){
+            SwingUtilities.invokeLater(() -> {
+                if(image!=null) action.accept(image);
+                else onLoad.add(action);
+            });
+        }
+
+        private void setImage(BufferedImage loaded){
+            SwingUtilities.invokeLater(() -> {
+                image = loaded;
+                for(Component component: waiting) component.repaint();
+                waiting.clear();
+                for(Consumer<Image> action: onLoad) action.accept(loaded);
+                onLoad.clear();
+            });
+        }
+
+        @Override
+        public void paintIcon(Component c, Graphics g, int x, int y) {
+            if(image!=null){
+                g.drawImage(image, x+(width-image.getWidth())/2, y+(height-image.getHeight())/2, null);
+                return;
+            }
+            waiting.add(c);
+            g.setColor(Color.LIGHT_GRAY);
+            g.drawRect(x, y, width-1, height-1);
+        }
+
+        @Override
+        public int getIconWidth() {
+            return width;
+        }
+
+        @Override
+        public int getIconHeight() {
+            return height;
+        }
+    }
+}
@@ -1,33 +1,474 @@
-import java.util.ArrayList;
-import java.util.HashSet;
-import java.util.List;
-import java.util.Set;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
+import java.util.function.IntPredicate;
+import java.util.stream.Stream;
 
+/**
+ * The garments available to search. Searches never lock: each one reads the current snapshot once and works on it
+ * throughout, while garments being added are built into a new snapshot that replaces the old one when it is complete.
+ */
 public class Inventory {
 
-    private final Set<Garment> allGarments = new HashSet<>();
+    // The number of garments in a sealed, indexed segment.
+    static final int SEGMENT_SIZE = 4096;
+
+    // A search of an inventory holding at least this many garments is split into tasks run on the fork/join pool, if the
+    // pool has more than one thread. Smaller inventories are searched faster than the tasks can be handed out.
+    public static final int DEFAULT_PARALLEL_THRESHOLD = 16*SEGMENT_SIZE;
+    // A task searches at most this many garments, and a larger search is split between several tasks.
+    public static final int DEFAULT_SPLIT_THRESHOLD = 2*SEGMENT_SIZE;
+
+    private final ForkJoinPool pool = ForkJoinPool.commonPool();
+    private volatile int parallelThreshold = DEFAULT_PARALLEL_THRESHOLD;
+    private volatile int splitThreshold = DEFAULT_SPLIT_THRESHOLD;
+    private volatile boolean vectorScan = true;
+
+    // Garments held in a memory-mapped catalog file, searched in place. Null unless the inventory was opened from a catalog.
+    private final CatalogFile catalog;
+
+    // The garments held in memory. Replaced, never modified, when garments are added.
+    private volatile Snapshot snapshot = new Snapshot(new InventorySegment[0], new Garment[0], Set.of(), new ProductIndex(0), FilterStatistics.EMPTY);
+
+    /**
+     * An immutable version of the in-memory garments: full segments that have been indexed, followed by a short tail of the
+     * most recently added garments that is searched garment by garment until it fills up and is sealed into a segment.
+     * The product codes map to each garment's ordinal, its position in the order the garments were added. The code table is
+     * shared with later snapshots and added to by them, so it is only read up to this snapshot's size. The statistics count
+     * exactly the garments in the snapshot, and are used to plan searches over it.
+     */
+    private record Snapshot(InventorySegment[] segments, Garment[] tail, Set<String> brands, ProductIndex codes,
+                            FilterStatistics statistics) {
+        int size(){
+            return segments.length*SEGMENT_SIZE+tail.length;
+        }
+
+        Garment get(int ordinal){
+            int segment = ordinal/SEGMENT_SIZE;
+            return segment<segments.length ? segments[segment].get(ordinal%SEGMENT_SIZE) : tail[ordinal-segments.length*SEGMENT_SIZE];
+        }
+
+        long productCodeOf(int ordinal){
+            int segment = ordinal/SEGMENT_SIZE;
+            return segment<segments.length ? segments[segment].getProductCode(ordinal%SEGMENT_SIZE)
+                    : tail[ordinal-segments.length*SEGMENT_SIZE].getProductCode();
+        }
+
+        int brandIdOf(int ordinal){
+            int segment = ordinal/SEGMENT_SIZE;
+            return segment<segments.length ? segments[segment].getBrandId(ordinal%SEGMENT_SIZE)
+                    : tail[ordinal-segments.length*SEGMENT_SIZE].getGarmentSpecs().getBrandId();
+        }
+    }
+
+    public Inventory(){
+        this.catalog = null;
+    }
+
+    private Inventory(CatalogFile catalog){
+        this.catalog = catalog;
+        Set<String> brands = new LinkedHashSet<>(catalog.getAllBrands());
+        brands.remove("NA");
+        this.snapshot = new Snapshot(new InventorySegment[0], new Garment[0], Collections.unmodifiableSet(brands), new ProductIndex(0),
+                FilterStatistics.EMPTY);
+    }
+
+    /**
+     * The purpose of this method is to open an inventory backed by a compiled catalog file, without loading its garments.
+     * Garments added afterwards are held in memory and searched alongside the catalog.
+     * @param catalogPath the location of the catalog file.
+     * @return an Inventory that searches the catalog in place.
+     * @throws IOException if the catalog cannot be opened.
+     */
+    public static Inventory openCatalog(Path catalogPath) throws IOException {
+        return new Inventory(CatalogFile.open(catalogPath));
+    }
+
+    /**
+     * The purpose of this method is to change when and how finely searches are split across threads.
+     * @param parallelThreshold the fewest garments an inventory must hold for its searches to be split, e.g.
+     *                          Integer.MAX_VALUE to always search on the calling thread.
+     * @param splitThreshold the most garments a single task searches. Rounded up to whole segments.
+     */
+    public void setParallelScan(int parallelThreshold, int splitThreshold){
+        if(splitThreshold<1) throw new IllegalArgumentException("Split threshold must be positive: "+splitThreshold);
+        this.parallelThreshold = parallelThreshold;
+        this.splitThreshold = splitThreshold;
+    }
+
+    /**
+     * The purpose of this method is to choose whether segments may be scanned with the vectorised kernel, e.g. to compare
+     * it with checking garments one at a time. It is only used if it is available (see ScanKernel).
+     * @param vectorScan true to use the vectorised kernel when it is available and worthwhile.
+     */
+    public void setVectorScan(boolean vectorScan){
+        this.vectorScan = vectorScan;
+    }
+
+    /**
+     * @return true if searches can scan segments with the vectorised kernel.
+     */
+    public boolean isVectorScanAvailable(){
+        return ScanKernel.VECTORISED!=null;
+    }
+
+    private ScanKernel scanKernel(){
+        return vectorScan ? ScanKernel.VECTORISED : null;
+    }
+
+    /**
+     * @return the number of garments in the inventory. Garments are only ever added, so this changes whenever the
+     *         inventory does.
+     */
+    public int size(){
+        return catalogSize()+snapshot.size();
+    }
+
+    private int catalogSize(){
+        return catalog!=null ? catalog.size() : 0;
+    }
 
     public void addGarment(Garment Garment){
-        this.allGarments.add(Garment);
+        addGarments(List.of(Garment));
     }
 
-    public Set<String> getAllBrands(){
-        Set<String> allBrands = new HashSet<>();
-        for(Garment tee: allGarments){
-            allBrands.add((String) tee.getGarmentSpecs().getFilter(Filter.BRAND));
+    /**
+     * The purpose of this method is to add several garments at once, publishing them to searches together.
+     * Writers take turns, but searches running at the same time are never blocked: they see either none or all of the garments.
+     * @param garments the garments to add, in order.
+     * @throws IllegalArgumentException if a product code is used twice, either among the garments or by a garment already
+     *                                  in the inventory. None of the garments are added.
+     */
+    public synchronized void addGarments(List<Garment> garments){
+        if(garments.isEmpty()) return;
+        Snapshot current = snapshot;
+        checkProductCodes(current, garments);
+        List<Garment> pending = new ArrayList<>(current.tail().length+garments.size());
+        pending.addAll(Arrays.asList(current.tail()));
+        pending.addAll(garments);
+
+        // Seal every full segment's worth of garments; whatever is left over becomes the new tail.
+        List<InventorySegment> segments = new ArrayList<>(Arrays.asList(current.segments()));
+        int sealed = 0;
+        for(; sealed+SEGMENT_SIZE<=pending.size(); sealed+=SEGMENT_SIZE){
+            segments.add(new InventorySegment(pending.subList(sealed, sealed+SEGMENT_SIZE).toArray(new Garment[0])));
+        }
+        Garment[] tail = pending.subList(sealed, pending.size()).toArray(new Garment[0]);
+
+        // Extend the brand list with any new brands, copying it at most once.
+        Set<String> brands = current.brands();
+        boolean copied = false;
+        for(Garment garment: garments){
+            if(!(garment.getGarmentSpecs().getFilter(Filter.BRAND) instanceof String brand) || brand.equals("NA") || brands.contains(brand)) continue;
+            if(!copied){
+                brands = new LinkedHashSet<>(brands);
+                copied = true;
+            }
+            brands.add(brand);
+        }
+
+        // Add the new codes to the shared table, or to a larger copy of it if it is too full. Ordinals at or above the current
+        // size are ignored by earlier snapshots, so they are not disturbed by the codes being added.
+        ProductIndex codes = current.codes();
+        if(!codes.hasRoomFor(garments.size())) codes = codes.grow(Math.max(garments.size(), codes.size()));
+        int ordinal = current.size();
+        for(Garment garment: garments) codes.put(garment.getProductCode(), ordinal++);
+
+        snapshot = new Snapshot(segments.toArray(new InventorySegment[0]), tail, copied ? Collections.unmodifiableSet(brands) : brands, codes,
+                current.statistics().with(garments));
+    }
+
+    /**
+     * The purpose of this method is to reject garments whose product codes are already taken, before any of them are added.
+     * @param current the snapshot the garments are being added to.
+     * @param garments the garments being added.
+     * @throws IllegalArgumentException naming the first product code that is used twice.
+     */
+    private void checkProductCodes(Snapshot current, List<Garment> garments){
+        ProductIndex added = new ProductIndex(garments.size());
+        for(int i = 0; i < garments.size(); i++){
+            Garment garment = garments.get(i);
+            long code = garment.getProductCode();
+            int earlier = added.put(code, i);
+            Garment existing = earlier>=0 ? garments.get(earlier) : findByProductCode(current, code);
+            if(existing!=null) throw duplicateProductCode(existing, garment);
+        }
+    }
+
+    static IllegalArgumentException duplicateProductCode(Garment first, Garment second){
+        return new IllegalArgumentException("Product code "+first.getProductCode()+" is used by more than one garment: \""
+                +first.getName()+"\" and \""+second.getName()+"\"");
+    }
+
+    /**
+     * The purpose of this method is to look up a garment by its product code, without searching the inventory.
+     * @param productCode the product code.
+     * @return the garment with that product code, or null if there is none.
+     */
+    public Garment findByProductCode(long productCode){
+        return findByProductCode(snapshot, productCode);
+    }
+
+    private Garment findByProductCode(Snapshot current, long productCode){
+        if(catalog!=null){
+            int row = catalog.findRow(productCode);
+            if(row>=0) return catalog.garment(row);
         }
+        int ordinal = current.codes().get(productCode, current.size());
+        return ordinal>=0 ? current.get(ordinal) : null;
+    }
+
+    /**
+     * The purpose of this method is to get a garment by its ordinal: its position in the inventory, counting the catalog's
+     * rows first and then the garments held in memory, in the order they were added. Garments are only ever added, so an
+     * ordinal found by an earlier search still gives the same garment.
+     * @param ordinal the garment's ordinal, e.g. one of the matches in a MatchList.
+     * @return the garment with that ordinal.
+     */
+    Garment garment(int ordinal){
+        int catalogSize = catalogSize();
+        return ordinal<catalogSize ? catalog.garment(ordinal) : snapshot.get(ordinal-catalogSize);
+    }
+
+    /**
+     * @param ordinal a garment's ordinal (see garment).
+     * @return the garment's product code, read without creating a Garment.
+     */
+    long productCodeOf(int ordinal){
+        int catalogSize = catalogSize();
+        return ordinal<catalogSize ? catalog.productCodeOf(ordinal) : snapshot.productCodeOf(ordinal-catalogSize);
+    }
+
+    /**
+     * @param ordinal a garment's ordinal (see garment).
+     * @return the BrandDictionary id of the garment's brand, or -1 if it has none, read without creating a Garment.
+     */
+    int brandIdOf(int ordinal){
+        int catalogSize = catalogSize();
+        return ordinal<catalogSize ? catalog.brandIdOf(ordinal) : snapshot.brandIdOf(ordinal-catalogSize);
+    }
+
+    /**
+     * @return the brands of the garments in the inventory, in the order they were added. The set is kept up to date as
+     *         garments are added, so this does not look at any garments, and it cannot be modified.
+     */
+    public Set<String> getBrands(){
+        return snapshot.brands();
+    }
+
+    /**
+     * @return a new Set of the brands of the garments in the inventory, together with "NA" for no preference.
+     */
+    public Set<String> getAllBrands(){
+        Set<String> allBrands = new HashSet<>(snapshot.brands());
         allBrands.add("NA");
         return allBrands;
     }
 
-    public List<Garment> findMatch(GarmentSpecs dreamGarment){
-        List<Garment> matchingGarments = new ArrayList<>();
-        for(Garment Garment: allGarments){
-            if(!dreamGarment.matches(Garment.getGarmentSpecs())) continue;
-            if(Garment.getPrice()<dreamGarment.getMinPrice()||Garment.getPrice()>dreamGarment.getMaxPrice()) continue;
-            matchingGarments.add(Garment);
+    /**
+     * The purpose of this method is to find every garment that matches a search.
+     * @param dreamGarment the user's search criteria.
+     * @return the matching garments, in the order the garments were added. Only the garments that are read are created.
+     */
+    public MatchList findMatch(GarmentSpecs dreamGarment){
+        return findMatch(dreamGarment, batch -> {});
+    }
+
+    /**
+     * The purpose of this method is to search the inventory a segment at a time, handing over the matches as they are found
+     * so that they can be counted before the whole search is finished. A large inventory is searched on several threads
+     * (see setParallelScan), and its batches are handed over in the same order, each once every block before it is searched.
+     * The matches are held by their ordinals (see MatchList), so no Garment is created for a match until it is read.
+     * @param dreamGarment the user's search criteria.
+     * @param onBatch called with each non-empty batch of matching garments, in the order the garments were added.
+     *                It may throw an unchecked exception, e.g. a CancellationException, to stop the search early.
+     * @return every matching garment, in the order the garments were added.
+     */
+    public MatchList findMatch(GarmentSpecs dreamGarment, Consumer<List<Garment>> onBatch){
+        Snapshot current = snapshot;
+        IntFunction<int[]> searchBlock = blockSearch(dreamGarment, current);
+        int blocks = (catalogSize()+SEGMENT_SIZE-1)/SEGMENT_SIZE+current.segments().length+1;
+        List<int[]> batches = new ArrayList<>();
+        Consumer<int[]> handOver = ordinals -> {
+            onBatch.accept(new MatchList(this, ordinals));
+            batches.add(ordinals);
+        };
+        if(catalogSize()+current.size()>=parallelThreshold && pool.getParallelism()>1) searchInParallel(searchBlock, blocks, handOver);
+        else {
+            for(int block = 0; block < blocks; block++){
+                int[] ordinals = searchBlock.apply(block);
+                if(ordinals.length>0) handOver.accept(ordinals);
+            }
+        }
+        return MatchList.concat(this, batches);
+    }
+
+    /**
+     * The purpose of this method is to compile a search into a search of one block of the inventory. The inventory is
+     * divided into blocks of up to a segment's worth of garments: the catalog's rows, then each segment, then the tail.
+     * @param dreamGarment the user's search criteria.
+     * @param current the snapshot to search.
+     * @return a function from a block's position to the ordinals of the block's matching garments, in ascending order.
+     *         It only reads the inventory, so it may be applied on several threads at once.
+     */
+    private IntFunction<int[]> blockSearch(GarmentSpecs dreamGarment, Snapshot current){
+        int catalogSize = catalogSize();
+        int catalogBlocks = (catalogSize+SEGMENT_SIZE-1)/SEGMENT_SIZE;
+        IntPredicate rowMatches = catalog==null ? null : catalog.rowMatcher(dreamGarment);
+        QueryPlan plan = current.statistics().plan(dreamGarment);
+        InventorySegment[] segments = current.segments();
+        Garment[] tail = current.tail();
+        ScanKernel kernel = scanKernel();
+        return block -> {
+            if(block<catalogBlocks){
+                int from = block*SEGMENT_SIZE;
+                return catalog.findMatchingRows(rowMatches, from, Math.min(from+SEGMENT_SIZE, catalogSize));
+            }
+            int[] ordinals;
+            if(block-catalogBlocks<segments.length) ordinals = segments[block-catalogBlocks].findMatchingOrdinals(dreamGarment, plan, kernel);
+            else {
+                GarmentMatcher matcher = plan.getMatcher();
+                ordinals = new int[tail.length];
+                int count = 0;
+                for(int i = 0; i < tail.length; i++) if(matcher.matches(tail[i])) ordinals[count++] = i;
+                ordinals = Arrays.copyOf(ordinals, count);
+            }
+            // The block's own positions, moved along to the ordinal of its first garment.
+            int first = catalogSize+(block-catalogBlocks)*SEGMENT_SIZE;
+            for(int i = 0; i < ordinals.length; i++) ordinals[i] += first;
+            return ordinals;
+        };
+    }
+
+    /**
+     * The purpose of this method is to search the inventory on several threads. Runs of neighbouring blocks are searched
+     * by fork/join tasks, and each task's matches are handed over as soon as it and every task before it are done, block
+     * by block, so the batches are the same as those of a search on a single thread. The search stops early, cancelling
+     * the tasks not yet finished, if onBatch throws or the searching thread is interrupted.
+     * @param searchBlock searches one block, from blockSearch.
+     * @param blocks the number of blocks.
+     * @param onBatch called with the ordinals of each non-empty batch of matching garments, in the order the garments were added.
+     */
+    private void searchInParallel(IntFunction<int[]> searchBlock, int blocks, Consumer<int[]> onBatch){
+        int blocksPerTask = Math.max(1, (splitThreshold+SEGMENT_SIZE-1)/SEGMENT_SIZE);
+        List<SearchTask> tasks = new ArrayList<>();
+        for(int from = 0; from < blocks; from += blocksPerTask){
+            SearchTask task = new SearchTask(searchBlock, from, Math.min(from+blocksPerTask, blocks));
+            pool.execute(task);
+            tasks.add(task);
+        }
+        try {
+            for(SearchTask task: tasks){
+                for(int[] batch: task.join()){
+                    if(Thread.currentThread().isInterrupted()) throw new CancellationException();
+                    if(batch.length>0) onBatch.accept(batch);
+                }
+            }
+        } finally {
+            // Does nothing to the tasks already finished, and stops the rest after the block they are searching.
+            for(SearchTask task: tasks) task.cancel(false);
         }
-        return matchingGarments;
+    }
+
+    /**
+     * Searches a run of neighbouring blocks of an inventory in turn, stopping between blocks if it is cancelled. The
+     * matches of each block are kept separately, in block order, so they can be handed over as batches.
+     */
+    private static final class SearchTask extends RecursiveTask<List<int[]>> {
+        private static final long serialVersionUID = 1L;
+
+        private final IntFunction<int[]> searchBlock;
+        private final int from;
+        private final int to;
+
+        private SearchTask(IntFunction<int[]> searchBlock, int from, int to) {
+            this.searchBlock = searchBlock;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected List<int[]> compute() {
+            List<int[]> batches = new ArrayList<>(to-from);
+            for(int block = from; block < to && !isCancelled(); block++) batches.add(searchBlock.apply(block));
+            return batches;
+        }
+    }
+
+    /**
+     * The purpose of this method is to plan a search over the garments held in memory, from how often each of the
+     * search's values occurs among them. A catalog plans its own searches.
+     * @param dreamGarment the user's search criteria.
+     * @return the plan the search would use.
+     */
+    QueryPlan plan(GarmentSpecs dreamGarment){
+        return snapshot.statistics().plan(dreamGarment);
+    }
+
+    /**
+     * The purpose of this method is to count, in a single pass over the inventory, how many garments there are for each
+     * value of every filter, given the choices made so far.
+     * @param search the choices made so far.
+     * @return the facet counts for the search.
+     */
+    public FacetCounts countFacets(GarmentSpecs search){
+        return countFacets(search, () -> false);
+    }
+
+    /**
+     * The purpose of this method is to count the garments for each value of every filter, as countFacets(search) does,
+     * but giving up part way if the count is no longer wanted, e.g. because the choices have changed again.
+     * @param search the choices made so far.
+     * @param cancelled checked before each segment's worth of garments, e.g. a SwingWorker's isCancelled.
+     * @return the facet counts for the search.
+     * @throws CancellationException if cancelled returns true before the count is finished.
+     */
+    public FacetCounts countFacets(GarmentSpecs search, BooleanSupplier cancelled){
+        FacetCounts facetCounts = new FacetCounts(search);
+        if(catalog!=null) catalog.countFacets(facetCounts, cancelled);
+        Snapshot current = snapshot;
+        for(InventorySegment segment: current.segments()){
+            if(cancelled.getAsBoolean()) throw new CancellationException();
+            segment.countFacets(facetCounts);
+        }
+        for(Garment Garment: current.tail()) facetCounts.count(Garment);
+        return facetCounts;
+    }
+
+    /**
+     * The purpose of this method is to search the inventory lazily. Nothing is searched until the stream is consumed, and
+     * then only a segment at a time, so a short-circuiting stream (e.g. one with a limit, or findFirst) stops searching
+     * as soon as it has enough garments.
+     * @param dreamGarment the user's search criteria.
+     * @return a sequential stream of the matching garments, in the order the garments were added.
+     */
+    public Stream<Garment> streamMatches(GarmentSpecs dreamGarment){
+        Snapshot current = snapshot;
+        QueryPlan plan = current.statistics().plan(dreamGarment);
+        GarmentMatcher matcher = plan.getMatcher();
+        ScanKernel kernel = scanKernel();
+        Stream<Garment> inMemory = Stream.concat(
+                Arrays.stream(current.segments()).flatMap(segment ->
+                        Arrays.stream(segment.findMatchingOrdinals(dreamGarment, plan, kernel)).mapToObj(segment::get)),
+                Arrays.stream(current.tail()).filter(matcher::matches));
+        return catalog==null ? inMemory : Stream.concat(catalog.streamMatches(dreamGarment), inMemory);
+    }
+
+    /**
+     * The purpose of this method is to find one page of matches, searching only as far as needed to fill the page.
+     * @param dreamGarment the user's search criteria.
+     * @param offset the number of matches to skip.
+     * @param limit the most matches to return.
+     * @return up to limit matching garments, starting at the given offset, in the order the garments were added.
+     */
+    public List<Garment> findMatch(GarmentSpecs dreamGarment, int offset, int limit){
+        return streamMatches(dreamGarment).skip(offset).limit(limit).toList();
     }
 
 }
@@ -0,0 +1,207 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Parses the inventory file in a single pass. Lines are read from a buffered stream and handed out in chunks to be parsed
+ * in parallel, so the whole file is never held in memory as one list of strings. Each line is tokenized in place, and enum
+ * fields are resolved against precomputed tables of their accepted spellings instead of being upper-cased and passed to valueOf.
+ *
+ * Line format: type,name,product code,price,brand,material,neckline,sleeve,pocket,style,[sizes],[description]
+ */
+public class InventoryParser {
+
+    // The number of lines parsed together as one parallel task.
+    private static final int LINES_PER_CHUNK = 8192;
+
+    private static final EnumTokens<GarmentType> GARMENT_TYPES = new EnumTokens<>(GarmentType.class);
+    private static final EnumTokens<Material> MATERIALS = new EnumTokens<>(Material.class);
+    private static final EnumTokens<Neckline> NECKLINES = new EnumTokens<>(Neckline.class);
+    private static final EnumTokens<SleeveType> SLEEVE_TYPES = new EnumTokens<>(SleeveType.class);
+    private static final EnumTokens<PocketType> POCKET_TYPES = new EnumTokens<>(PocketType.class);
+    private static final EnumTokens<HoodieStyle> HOODIE_STYLES = new EnumTokens<>(HoodieStyle.class);
+    private static final EnumTokens<Size> SIZES = new EnumTokens<>(Size.class);
+
+    /**
+     * The purpose of this method is to read every garment from an inventory file, skipping the header line.
+     * @param path the location of the inventory file.
+     * @return the garments in the order they appear in the file.
+     * @throws IOException if the file cannot be read.
+     * @throws IllegalArgumentException if a line cannot be parsed. The message names the line and the field at fault.
+     */
+    public static List<Garment> parse(Path path) throws IOException {
+        // Chunks being parsed, oldest first. Once there are enough to keep every thread busy, the oldest is waited for before
+        // any more lines are read, so only a few chunks of lines are held in memory however long the file is.
+        Deque<CompletableFuture<List<Garment>>> inFlight = new ArrayDeque<>();
+        int maxInFlight = 2*ForkJoinPool.commonPool().getParallelism();
+        // Joined in file order so that garments keep their order and the first bad line is the one reported.
+        List<Garment> garments = new ArrayList<>();
+        try(BufferedReader reader = Files.newBufferedReader(path)){
+            reader.readLine();
+            int lineNumber = 1;
+            int firstLineOfChunk = 2;
+            List<String> chunk = new ArrayList<>(LINES_PER_CHUNK);
+            String line;
+            while((line = reader.readLine())!=null){
+                lineNumber++;
+                chunk.add(line);
+                if(chunk.size()==LINES_PER_CHUNK){
+                    if(inFlight.size()>=maxInFlight) garments.addAll(join(inFlight.poll()));
+                    inFlight.add(parseChunkAsync(chunk, firstLineOfChunk));
+                    chunk = new ArrayList<>(LINES_PER_CHUNK);
+                    firstLineOfChunk = lineNumber+1;
+                }
+            }
+            if(!chunk.isEmpty()) inFlight.add(parseChunkAsync(chunk, firstLineOfChunk));
+        }
+        while(!inFlight.isEmpty()) garments.addAll(join(inFlight.poll()));
+        return garments;
+    }
+
+    private static List<Garment> join(CompletableFuture<List<Garment>> chunk){
+        try {
+            return chunk.join();
+        }catch (CompletionException e){
+            if(e.getCause() instanceof IllegalArgumentException cause) throw cause;
+            throw e;
+        }
+    }
+
+    private static CompletableFuture<List<Garment>> parseChunkAsync(List<String> lines, int firstLineNumber){
+        return CompletableFuture.supplyAsync(() -> {
+            List<Garment> garments = new ArrayList<>(lines.size());
+            for(int i=0;i<lines.size();i++){
+                if(lines.get(i).isBlank()) continue;
+                garments.add(parseLine(lines.get(i), firstLineNumber+i));
+            }
+            return garments;
+        });
+    }
+
+    /**
+     * The purpose of this method is to turn one line of the inventory file into a Garment.
+     * @param line the text of the line.
+     * @param lineNumber the line's position in the file, used in error messages.
+     * @return the Garment described by the line.
+     */
+    public static Garment parseLine(String line, int lineNumber){
+        int sizesStart = line.indexOf('[');
+        int sizesEnd = line.indexOf(']', sizesStart+1);
+        int descriptionStart = line.indexOf('[', sizesEnd+1);
+        int descriptionEnd = line.lastIndexOf(']');
+        if(sizesStart<0 || sizesEnd<0 || descriptionStart<0 || descriptionEnd<descriptionStart){
+            throw error("Line", "garment", lineNumber, "expected [sizes] and [description] sections");
+        }
+
+        // The ten comma-separated fields before the sizes, as start and end offsets into the line.
+        int[] bounds = new int[20];
+        int start = 0;
+        for(int field=0;field<10;field++){
+            int end = line.indexOf(',', start);
+            if(end<0 || end>sizesStart) throw error("Line", "garment", lineNumber, "expected 10 fields before the sizes");
+            bounds[2*field] = start;
+            bounds[2*field+1] = end;
+            start = end+1;
+        }
+
+        GarmentType garmentType = lookup(GARMENT_TYPES, line, bounds, 0, "type", "garment", lineNumber);
+        String name = line.substring(bounds[2], bounds[3]);
+
+        long productCode;
+        try{
+            productCode = Long.parseLong(line, bounds[4], bounds[5], 10);
+        }catch (NumberFormatException n) {
+            throw error("Product code", "garment", lineNumber, n.getMessage());
+        }
+
+        double price;
+        try{
+            price = Double.parseDouble(line.substring(bounds[6], bounds[7]));
+        }catch (NumberFormatException n){
+            throw error("Price", "garment", lineNumber, n.getMessage());
+        }
+        if(!(Math.abs(price)<=Garment.MAX_PRICE)) throw error("Price", "garment", lineNumber, "price must be no more than $"+String.format(Locale.ROOT, "%.2f", Garment.MAX_PRICE));
+
+        String brand = line.substring(bounds[8], bounds[9]);
+        // Brands in the inventory are given an id as they are read, so the garment holds its brand as the id.
+        BrandDictionary.idOf(brand);
+        Material material = lookup(MATERIALS, line, bounds, 5, "Material", "garment", lineNumber);
+        Neckline neckline = lookup(NECKLINES, line, bounds, 6, "Neckline", "t-shirt", lineNumber);
+        SleeveType sleeveType = lookup(SLEEVE_TYPES, line, bounds, 7, "Sleeve type", "t-shirt", lineNumber);
+        PocketType pocketType = lookup(POCKET_TYPES, line, bounds, 8, "Pocket type", "hoodie", lineNumber);
+        HoodieStyle hoodieStyle = lookup(HOODIE_STYLES, line, bounds, 9, "Style", "hoodie", lineNumber);
+
+        Set<Size> sizes = EnumSet.noneOf(Size.class);
+        for(int sizeStart = sizesStart+1; sizeStart<sizesEnd; ){
+            int sizeEnd = line.indexOf(',', sizeStart);
+            if(sizeEnd<0 || sizeEnd>sizesEnd) sizeEnd = sizesEnd;
+            Size size = SIZES.lookup(line, sizeStart, sizeEnd);
+            if(size==null) throw error("Size", "t-shirt", lineNumber, unrecognised(line, sizeStart, sizeEnd));
+            sizes.add(size);
+            sizeStart = sizeEnd+1;
+        }
+
+        String description = line.substring(descriptionStart+1, descriptionEnd);
+
+        Map<Filter,Object> filterMap = new LinkedHashMap<>();
+        filterMap.put(Filter.GARMENT_TYPE,garmentType);
+        filterMap.put(Filter.BRAND,brand);
+        filterMap.put(Filter.MATERIAL,material);
+        filterMap.put(Filter.SIZE,sizes);
+        if(!neckline.equals(Neckline.NA)) filterMap.put(Filter.NECKLINE,neckline);
+        if(!sleeveType.equals(SleeveType.NA)) filterMap.put(Filter.SLEEVE_TYPE,sleeveType);
+        if(!hoodieStyle.equals(HoodieStyle.NA)) filterMap.put(Filter.HOODIE_STYLE,hoodieStyle);
+        if(!pocketType.equals(PocketType.NA)) filterMap.put(Filter.POCKET_TYPE,pocketType);
+
+        return new Garment(name,productCode,price,description,new GarmentSpecs(filterMap));
+    }
+
+    private static <E extends Enum<E>> E lookup(EnumTokens<E> tokens, String line, int[] bounds, int field,
+                                                 String data, String garment, int lineNumber){
+        E value = tokens.lookup(line, bounds[2*field], bounds[2*field+1]);
+        if(value==null) throw error(data, garment, lineNumber, unrecognised(line, bounds[2*field], bounds[2*field+1]));
+        return value;
+    }
+
+    private static String unrecognised(String line, int start, int end){
+        return "unrecognised value \""+line.substring(start, end)+"\"";
+    }
+
+    private static IllegalArgumentException error(String data, String garment, int lineNumber, String message){
+        return new IllegalArgumentException("Error in file. "+data+" data could not be parsed for "+garment+" on line "
+                +lineNumber+". \nError message: "+message);
+    }
+
+    /**
+     * A precomputed table of the spellings accepted for each constant of an enum. A constant such as WOOL_BLEND may be written
+     * as "wool_blend", "wool blend" or "wool-blend" in any case. Tokens are compared in place, so a lookup does not allocate.
+     */
+    private static final class EnumTokens<E extends Enum<E>> {
+        private final String[] spellings;
+        private final List<E> values = new ArrayList<>();
+
+        private EnumTokens(Class<E> type){
+            List<String> spellingList = new ArrayList<>();
+            for(E constant: type.getEnumConstants()){
+                for(String spelling: new LinkedHashSet<>(List.of(constant.name(), constant.name().replace('_',' '), constant.name().replace('_','-')))){
+                    spellingList.add(spelling);
+                    values.add(constant);
+                }
+            }
+            spellings = spellingList.toArray(new String[0]);
+        }
+
+        private E lookup(String line, int start, int end){
+            int length = end-start;
+            for(int i=0;i<spellings.length;i++){
+                if(spellings[i].length()==length && line.regionMatches(true, start, spellings[i], 0, length)) return values.get(i);
+            }
+            return null;
+        }
+    }
+}
@@ -0,0 +1,233 @@
+import java.util.*;
+import java.util.function.IntPredicate;
+import java.util.stream.IntStream;
+
+/**
+ * An immutable block of garments together with its filter and price indexes. Once built, a segment is never changed,
+ * so any number of threads can search it without locking. The garments are held in a columnar GarmentStore, and a search
+ * returns the ordinals of its matches, so Garment objects are only created for the garments that are read.
+ */
+final class InventorySegment {
+
+    // The cost of checking a garment with the matcher, relative to marking it as a candidate in a bitmap.
+    private static final int CHECK_COST = 8;
+    // Narrowing the candidates by one filter makes about four passes (copy, flip, or and and) over bitmaps of the segment,
+    // each word of which covers 64 garments, so it costs about one mark per 16 garments in the segment.
+    private static final int GARMENTS_PER_BITMAP_COST = 16;
+
+    private static final int BRAND = Filter.BRAND.ordinal();
+
+    // Garments in the order they were added, so a garment's position in the store is its ordinal in the index.
+    private final GarmentStore garments;
+
+    // For each filter and each value of that filter, a bitmap of the ordinals of the garments that have that value.
+    // Indexed by Filter ordinal and then by enum ordinal, or for brands by BrandDictionary id; null if no garment has the value.
+    private final BitSet[][] filterIndex = new BitSet[Filter.values().length][];
+    // For each filter, a bitmap of the garments that specify any value for it at all, indexed by Filter ordinal.
+    private final BitSet[] specifiedFilters = new BitSet[Filter.values().length];
+
+    // Garment prices in ascending order alongside the ordinal of the garment each price belongs to.
+    private final double[] sortedPrices;
+    private final int[] priceOrdinals;
+
+    /**
+     * @param garments the garments of the segment, which are copied into its store, so the objects are not kept.
+     */
+    InventorySegment(Garment[] garments) {
+        this.garments = new GarmentStore(garments);
+        for(Filter key: Filter.values()){
+            int f = key.ordinal();
+            specifiedFilters[f] = new BitSet();
+            filterIndex[f] = new BitSet[key.isEnumValued() ? key.getValueType().getEnumConstants().length : 0];
+        }
+        for(int ordinal=0;ordinal<garments.length;ordinal++){
+            for(long specified = this.garments.getSpecifiedFilters(ordinal); specified!=0; specified &= specified-1){
+                int f = Long.numberOfTrailingZeros(specified);
+                specifiedFilters[f].set(ordinal);
+                if(f==BRAND){
+                    int brandId = this.garments.getBrandId(ordinal);
+                    if(brandId<0) continue;
+                    if(brandId>=filterIndex[f].length) filterIndex[f] = Arrays.copyOf(filterIndex[f], brandId+1);
+                    postingsOf(f, brandId).set(ordinal);
+                    continue;
+                }
+                for(long mask = this.garments.getValueMask(Filter.values()[f], ordinal); mask!=0; mask &= mask-1){
+                    postingsOf(f, Long.numberOfTrailingZeros(mask)).set(ordinal);
+                }
+            }
+        }
+        GarmentStore store = this.garments;
+        priceOrdinals = IntStream.range(0, garments.length).boxed()
+                .sorted(Comparator.comparingDouble(store::getPrice))
+                .mapToInt(Integer::intValue).toArray();
+        sortedPrices = new double[priceOrdinals.length];
+        for(int i = 0; i < priceOrdinals.length; i++) sortedPrices[i] = store.getPrice(priceOrdinals[i]);
+    }
+
+    private BitSet postingsOf(int f, int value){
+        if(filterIndex[f][value]==null) filterIndex[f][value] = new BitSet();
+        return filterIndex[f][value];
+    }
+
+    int size(){
+        return garments.size();
+    }
+
+    /**
+     * @param ordinal the position of a garment in the segment.
+     * @return the Garment object for the garment, created the first time it is read.
+     */
+    Garment get(int ordinal){
+        return garments.garment(ordinal);
+    }
+
+    long getProductCode(int ordinal){
+        return garments.getProductCode(ordinal);
+    }
+
+    int getBrandId(int ordinal){
+        return garments.getBrandId(ordinal);
+    }
+
+    /**
+     * The purpose of this method is to add every garment in the segment to a set of facet counts, without creating
+     * Garment objects.
+     * @param facetCounts the counts to add to.
+     */
+    void countFacets(FacetCounts facetCounts){
+        garments.countFacets(facetCounts);
+    }
+
+    /**
+     * The purpose of this method is to search the segment using the filter and price indexes, without creating any
+     * Garment objects, so that only the matches that are read are created.
+     * @param dreamGarment the user's search criteria.
+     * @param plan the plan for the search, which chooses the filters to look up in the index and the order to check them in.
+     * @param kernel the kernel to check the garments with when every garment is in the price range and the index is not
+     *               worth using, or null to always check one garment at a time.
+     * @return the ordinals of the matching garments, in ascending order.
+     */
+    int[] findMatchingOrdinals(GarmentSpecs dreamGarment, QueryPlan plan, ScanKernel kernel){
+        // Find the garments in the price range by binary search over the price index.
+        int from = firstPriceAtLeast(dreamGarment.getMinPrice());
+        int to = firstPriceAbove(dreamGarment.getMaxPrice());
+        if(from>=to) return new int[0];
+        GarmentMatcher matcher = plan.getMatcher();
+        IntPredicate matches = garments.rowMatcher(matcher);
+        Filter[] indexedFilters = plan.getIndexedFilters();
+        if(!isIndexWorthwhile(to-from, indexedFilters.length, plan.getIndexedFraction())){
+            // A kernel checks every garment in the store, so it is only used when every garment is in the price range: the
+            // price index orders the garments by price, so a narrower range is not a run of rows the kernel could be given.
+            if(kernel!=null && to-from==garments.size()){
+                return kernel.findMatchingRows(garments, matcher);
+            }
+            return findMatchInPriceBand(matches, from, to);
+        }
+
+        // Start with every garment in the price range as a candidate and narrow down the candidates one filter at a time,
+        // most selective first.
+        BitSet candidates = new BitSet(garments.size());
+        for(int i = from; i < to; i++) candidates.set(priceOrdinals[i]);
+        for(Filter key: indexedFilters){
+            if(candidates.isEmpty()) break;
+            candidates.and(garmentsAllowedBy(key, matcher));
+        }
+
+        // The index only narrows the candidates; the compiled matcher makes the final decision, including the price range
+        // and the filters that were not looked up.
+        int[] matchingOrdinals = new int[candidates.cardinality()];
+        int count = 0;
+        for(int i = candidates.nextSetBit(0); i >= 0; i = candidates.nextSetBit(i+1)){
+            if(matches.test(i)) matchingOrdinals[count++] = i;
+        }
+        return Arrays.copyOf(matchingOrdinals, count);
+    }
+
+    /**
+     * The purpose of this method is to decide whether looking up filters in the index costs less than checking every
+     * garment in the price range, estimating both costs from the size of the range and the plan.
+     * @param priceBand the number of garments in the price range.
+     * @param indexedFilters the number of filters the plan would look up.
+     * @param indexedFraction the estimated fraction of the garments those filters allow.
+     * @return true if the candidates should be narrowed through the index before they are checked.
+     */
+    private boolean isIndexWorthwhile(int priceBand, int indexedFilters, double indexedFraction){
+        if(indexedFilters==0) return false;
+        double scanCost = (double) priceBand*CHECK_COST;
+        double indexCost = priceBand + (double) indexedFilters*garments.size()/GARMENTS_PER_BITMAP_COST
+                + indexedFraction*priceBand*CHECK_COST;
+        return indexCost<scanCost;
+    }
+
+    /**
+     * The purpose of this method is to search the price range by checking each garment in it directly,
+     * so the cost depends on the size of the range rather than the size of the segment.
+     * @param matches the compiled search, as a test of a garment's ordinal.
+     * @param from the position in the price index of the first garment in the price range.
+     * @param to the position in the price index after the last garment in the price range.
+     * @return the ordinals of the matching garments, in ascending order.
+     */
+    private int[] findMatchInPriceBand(IntPredicate matches, int from, int to){
+        int[] matchingOrdinals = new int[to-from];
+        int count = 0;
+        for(int i = from; i < to; i++){
+            if(matches.test(priceOrdinals[i])) matchingOrdinals[count++] = priceOrdinals[i];
+        }
+        Arrays.sort(matchingOrdinals, 0, count);
+        return Arrays.copyOf(matchingOrdinals, count);
+    }
+
+    /**
+     * @param price the lowest price of interest.
+     * @return the position in the price index of the first garment priced at or above the given price.
+     */
+    private int firstPriceAtLeast(double price){
+        int low = 0, high = sortedPrices.length;
+        while(low<high){
+            int mid = (low+high) >>> 1;
+            if(sortedPrices[mid]<price) low = mid+1;
+            else high = mid;
+        }
+        return low;
+    }
+
+    /**
+     * @param price the highest price of interest.
+     * @return the position in the price index of the first garment priced above the given price.
+     */
+    private int firstPriceAbove(double price){
+        int low = 0, high = sortedPrices.length;
+        while(low<high){
+            int mid = (low+high) >>> 1;
+            if(sortedPrices[mid]<=price) low = mid+1;
+            else high = mid;
+        }
+        return low;
+    }
+
+    /**
+     * The purpose of this method is to look up which garments are not ruled out by a single search criterion.
+     * A garment that does not specify the filter at all (e.g. a hoodie has no neckline) is not ruled out by it.
+     * @param key the filter being searched on.
+     * @param matcher the compiled search, which gives the values accepted for the filter.
+     * @return a bitmap of the ordinals of the garments allowed by the criterion.
+     */
+    private BitSet garmentsAllowedBy(Filter key, GarmentMatcher matcher){
+        int f = key.ordinal();
+        BitSet allowed = (BitSet) specifiedFilters[f].clone();
+        allowed.flip(0, garments.size());
+        BitSet[] postings = filterIndex[f];
+        if(f==BRAND){
+            for(int brandId = 0; brandId < postings.length; brandId++){
+                if(postings[brandId]!=null && matcher.acceptsBrandId(brandId)) allowed.or(postings[brandId]);
+            }
+        }
+        else {
+            for(long mask = matcher.getAcceptedMask(key); mask!=0; mask &= mask-1){
+                int value = Long.numberOfTrailingZeros(mask);
+                if(value<postings.length && postings[value]!=null) allowed.or(postings[value]);
+            }
+        }
+        return allowed;
+    }
+}
@@ -0,0 +1,78 @@
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Watches the inventory file on a background thread and rebuilds the inventory whenever the file changes.
+ * Each reload parses the file into a brand-new Inventory, builds its indexes, and only then hands it to the listener,
+ * so searches never see a half-built inventory and never wait for a reload.
+ */
+public class InventoryWatcher implements Runnable {
+
+    // Editors often write a file in several steps, so wait for the changes to settle before reloading.
+    private static final long SETTLE_MILLIS = 250;
+
+    private final Path inventoryPath;
+    private final Consumer<Inventory> onReload;
+
+    public InventoryWatcher(Path inventoryPath, Consumer<Inventory> onReload) {
+        this.inventoryPath = inventoryPath.toAbsolutePath().normalize();
+        this.onReload = onReload;
+    }
+
+    /**
+     * The purpose of this method is to start watching the inventory file on a daemon thread.
+     * @param inventoryPath the location of the inventory file.
+     * @param onReload called on the watcher thread with each newly loaded inventory.
+     * @return the watcher thread.
+     */
+    public static Thread start(Path inventoryPath, Consumer<Inventory> onReload){
+        Thread watcher = new Thread(new InventoryWatcher(inventoryPath, onReload), "inventory-watcher");
+        watcher.setDaemon(true);
+        watcher.start();
+        return watcher;
+    }
+
+    @Override
+    public void run() {
+        try(WatchService watchService = FileSystems.getDefault().newWatchService()){
+            inventoryPath.getParent().register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+            while(!Thread.currentThread().isInterrupted()){
+                WatchKey key = watchService.take();
+                boolean changed = isInventoryEvent(key);
+                // Collect any further events for the same change before reloading.
+                WatchKey more;
+                while((more = watchService.poll(SETTLE_MILLIS, TimeUnit.MILLISECONDS))!=null) changed |= isInventoryEvent(more);
+                if(changed) reload();
+            }
+        }catch (IOException io){
+            System.out.println("Inventory file can no longer be watched for changes. \nError message: "+io.getMessage());
+        }catch (InterruptedException e){
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private boolean isInventoryEvent(WatchKey key){
+        boolean changed = false;
+        for(WatchEvent<?> event: key.pollEvents()){
+            if(event.context() instanceof Path changedFile && changedFile.equals(inventoryPath.getFileName())) changed = true;
+        }
+        key.reset();
+        return changed;
+    }
+
+    /**
+     * The purpose of this method is to load the changed inventory file and publish it. If the file cannot be loaded,
+     * e.g. because it is only partly written, the current inventory is kept.
+     */
+    private void reload(){
+        try {
+            Inventory reloaded = new Inventory();
+            reloaded.addGarments(InventoryParser.parse(inventoryPath));
+            onReload.accept(reloaded);
+        }catch (IOException | IllegalArgumentException e){
+            System.out.println("Inventory could not be reloaded, keeping the current inventory. \nError message: "+e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,83 @@
+import java.util.AbstractList;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * The garments found by a search, held as their ordinals in the inventory that was searched rather than as Garment
+ * objects. A garment is only fetched from the inventory when its position in the list is read, e.g. as its row of the
+ * results list is painted, so a search costs four bytes per match however many garments it finds.
+ *
+ * Garments are only ever added to an inventory, so the ordinals stay valid as it grows. The list cannot be modified.
+ */
+public final class MatchList extends AbstractList<Garment> implements RandomAccess {
+
+    private final Inventory inventory;
+    private final int[] ordinals;
+
+    /**
+     * @param inventory the inventory that was searched.
+     * @param ordinals the ordinals of the matching garments in the inventory, which are not copied and must not be changed.
+     */
+    MatchList(Inventory inventory, int[] ordinals) {
+        this.inventory = inventory;
+        this.ordinals = ordinals;
+    }
+
+    /**
+     * The purpose of this method is to join the batches of a search into a single list of matches.
+     * @param inventory the inventory that was searched.
+     * @param batches the ordinals of each batch of matches, in order.
+     * @return the matches of every batch, in order.
+     */
+    static MatchList concat(Inventory inventory, List<int[]> batches){
+        if(batches.size()==1) return new MatchList(inventory, batches.get(0));
+        int size = 0;
+        for(int[] batch: batches) size += batch.length;
+        int[] ordinals = new int[size];
+        int filled = 0;
+        for(int[] batch: batches){
+            System.arraycopy(batch, 0, ordinals, filled, batch.length);
+            filled += batch.length;
+        }
+        return new MatchList(inventory, ordinals);
+    }
+
+    @Override
+    public Garment get(int index) {
+        return inventory.garment(ordinals[index]);
+    }
+
+    @Override
+    public int size() {
+        return ordinals.length;
+    }
+
+    /**
+     * @param index a position in the list.
+     * @return the product code of the garment at that position, read without fetching the garment.
+     */
+    long getProductCode(int index){
+        return inventory.productCodeOf(ordinals[index]);
+    }
+
+    /**
+     * @param index a position in the list.
+     * @return the BrandDictionary id of the brand of the garment at that position, or -1 if it has none, read without
+     *         fetching the garment.
+     */
+    int getBrandId(int index){
+        return inventory.brandIdOf(ordinals[index]);
+    }
+
+    /**
+     * The purpose of this method is to put the matches in a different order, e.g. ranked by popularity, without fetching
+     * any garments.
+     * @param positions the position in this list of each match, in the new order.
+     * @return a new list of the matches in the new order.
+     */
+    MatchList reorder(int[] positions){
+        int[] reordered = new int[positions.length];
+        for(int i = 0; i < positions.length; i++) reordered[i] = ordinals[positions[i]];
+        return new MatchList(inventory, reordered);
+    }
+}
@@ -0,0 +1,356 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ObjLongConsumer;
+import java.util.stream.Stream;
+
+/**
+ * Records orders in an append-only log, written by a single background thread so that placing an order never waits on
+ * the disk. Orders waiting to be written are appended together and synced together (group commit), so a slow disk makes
+ * the batches bigger rather than making every order wait for its own sync.
+ *
+ * The log is split into segment files named orders-000001.log, orders-000002.log, and so on. Each time the journal is
+ * opened it starts a new segment, so an order cut short by a crash is never followed by another. A segment is closed and
+ * a new one started once it grows past the segment size.
+ *
+ * Each order is one line of tab-separated fields: time, product code, item name, customer name, phone number, email
+ * address and message. Backslashes, tabs and line breaks within a field are escaped as \\, \t, \n and \r.
+ */
+public class OrderJournal implements AutoCloseable {
+
+    /**
+     * When the log is synced to the disk, which decides how much an order's confirmation promises.
+     */
+    public enum Sync {
+        // Sync after every batch, before confirming its orders. A confirmed order survives a power failure.
+        ALWAYS,
+        // Sync at most once per sync interval. Orders are confirmed once written, so a power failure can lose the last interval.
+        PERIODIC,
+        // Leave syncing to the operating system. A confirmed order survives the app crashing, but not the machine.
+        NEVER
+    }
+
+    public static final int DEFAULT_QUEUE_CAPACITY = 1024;
+    public static final long DEFAULT_SEGMENT_BYTES = 64L * 1024 * 1024;
+    public static final long DEFAULT_SYNC_INTERVAL_MILLIS = 1000;
+
+    // The most orders written as one batch.
+    private static final int MAX_BATCH = 256;
+    // Queued by close, after every other order, to tell the writer to finish.
+    private static final PendingOrder CLOSE = new PendingOrder(null, null, null, null);
+
+    private final Path directory;
+    private final Sync sync;
+    private final long segmentBytes;
+    private final long syncIntervalNanos;
+    private final BlockingQueue<PendingOrder> queue;
+    private final Thread writer;
+    private boolean closed;
+    // Set if the writer stopped because of an unexpected error, after which every order is turned away.
+    private Throwable failure;
+    // The time given to the last order submitted. Every order gets a later time than the one before.
+    private Instant lastTime = Instant.EPOCH;
+
+    // Only used by the writer thread.
+    private int segmentNumber;
+    private FileChannel segment;
+    private boolean unsynced;
+    private long lastSync = System.nanoTime();
+
+    private record PendingOrder(Geek geek, Garment garment, Instant time, CompletableFuture<Instant> confirmation) {
+    }
+
+    /**
+     * @param directory the directory the segment files are written to. It is created if it does not exist.
+     * @param sync when the log is synced to the disk.
+     * @param queueCapacity the most orders that can be waiting to be written before new orders are turned away.
+     * @param segmentBytes the size past which a segment is closed and a new one started.
+     * @param syncIntervalMillis for Sync.PERIODIC, the longest time a written order waits to be synced.
+     * @throws IOException if the directory cannot be created or read.
+     */
+    public OrderJournal(Path directory, Sync sync, int queueCapacity, long segmentBytes, long syncIntervalMillis) throws IOException {
+        this.directory = directory;
+        this.sync = sync;
+        this.segmentBytes = segmentBytes;
+        this.syncIntervalNanos = syncIntervalMillis * 1_000_000;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        Files.createDirectories(directory);
+        try(Stream<Path> files = Files.list(directory)){
+            segmentNumber = files.mapToInt(OrderJournal::segmentNumberOf).max().orElse(0);
+        }
+        writer = new Thread(this::writeOrders, "order-journal");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * The purpose of this method is to open a journal with the default queue capacity, segment size and sync interval.
+     * @param directory the directory the segment files are written to.
+     * @param sync when the log is synced to the disk.
+     * @return the opened journal.
+     * @throws IOException if the directory cannot be created or read.
+     */
+    public static OrderJournal open(Path directory, Sync sync) throws IOException {
+        return new OrderJournal(directory, sync, DEFAULT_QUEUE_CAPACITY, DEFAULT_SEGMENT_BYTES, DEFAULT_SYNC_INTERVAL_MILLIS);
+    }
+
+    /**
+     * The purpose of this method is to queue an order to be written, without waiting for it.
+     * @param geek the customer placing the order.
+     * @param garment the garment being ordered.
+     * @return a future that completes once the order has been written, and synced if the sync policy is ALWAYS, with the
+     *         time the order was recorded under. The times of successive orders always increase.
+     *         It fails with a RejectedExecutionException if the journal is closed, has stopped after an error or too many
+     *         orders are already waiting, e.g. because the disk is slow, and with an IOException if the order could not be
+     *         written.
+     */
+    public synchronized CompletableFuture<Instant> submit(Geek geek, Garment garment){
+        CompletableFuture<Instant> confirmation = new CompletableFuture<>();
+        Instant time = Instant.now();
+        if(!time.isAfter(lastTime)) time = lastTime.plusNanos(1);
+        if(closed || !queue.offer(new PendingOrder(geek, garment, time, confirmation))){
+            confirmation.completeExceptionally(new RejectedExecutionException(failure!=null ? "The order journal stopped after an error"
+                    : closed ? "The order journal is closed" : "Too many orders are waiting to be written", failure));
+        }
+        else lastTime = time;
+        return confirmation;
+    }
+
+    /**
+     * The purpose of this method is to stop accepting orders, write and sync every order already queued, and close the log.
+     */
+    @Override
+    public void close(){
+        try {
+            synchronized (this){
+                if(closed) return;
+                closed = true;
+                queue.put(CLOSE);
+            }
+            writer.join();
+        }catch (InterruptedException e){
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * The purpose of this method is to read back the orders in a journal that were recorded after a given time, e.g. to
+     * catch up on orders placed since a summary of them was last saved. Only the segments that can hold such orders are
+     * read. A line that cannot be read, e.g. one cut short by a crash, is skipped.
+     * @param directory the directory the segment files are in.
+     * @param after only orders recorded after this time are read, or every order if this is null.
+     * @param onOrder called with the time and product code of each order, in the order they were recorded.
+     * @throws IOException if the segment files cannot be read.
+     */
+    public static void readOrders(Path directory, Instant after, ObjLongConsumer<Instant> onOrder) throws IOException {
+        if(!Files.isDirectory(directory)) return;
+        List<Path> segments;
+        try(Stream<Path> files = Files.list(directory)){
+            segments = files.filter(file -> segmentNumberOf(file)>0)
+                    .sorted(Comparator.comparingInt(OrderJournal::segmentNumberOf)).toList();
+        }
+        // Orders are recorded in time order, so start from the newest segment whose first order is not after the time.
+        int first = 0;
+        if(after!=null){
+            for(int i = segments.size()-1; i >= 0; i--){
+                Instant firstTime = firstTimeIn(segments.get(i));
+                if(firstTime!=null && !firstTime.isAfter(after)){
+                    first = i;
+                    break;
+                }
+            }
+        }
+        for(Path segment: segments.subList(first, segments.size())){
+            try(BufferedReader reader = Files.newBufferedReader(segment)){
+                String line;
+                while((line = reader.readLine())!=null){
+                    int timeEnd = line.indexOf('\t');
+                    int codeEnd = line.indexOf('\t', timeEnd+1);
+                    if(timeEnd<0 || codeEnd<0) continue;
+                    try {
+                        Instant time = Instant.parse(line.substring(0, timeEnd));
+                        long productCode = Long.parseLong(line, timeEnd+1, codeEnd, 10);
+                        if(after==null || time.isAfter(after)) onOrder.accept(time, productCode);
+                    }catch (DateTimeParseException | NumberFormatException e){
+                        // Not a complete order line.
+                    }
+                }
+            }
+        }
+    }
+
+    private static Instant firstTimeIn(Path segment) throws IOException {
+        try(BufferedReader reader = Files.newBufferedReader(segment)){
+            String line = reader.readLine();
+            int timeEnd = line==null ? -1 : line.indexOf('\t');
+            return timeEnd<0 ? null : Instant.parse(line.substring(0, timeEnd));
+        }catch (DateTimeParseException e){
+            return null;
+        }
+    }
+
+    private void writeOrders(){
+        List<PendingOrder> batch = new ArrayList<>(MAX_BATCH);
+        boolean closing = false;
+        try {
+            while(!closing){
+                // With PERIODIC syncing, wait no longer than the written orders can go unsynced.
+                PendingOrder first = unsynced && sync==Sync.PERIODIC
+                        ? queue.poll(lastSync+syncIntervalNanos-System.nanoTime(), TimeUnit.NANOSECONDS) : queue.take();
+                if(first==null){
+                    syncSegment();
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, MAX_BATCH-1);
+                // Nothing is queued after CLOSE, so it can only be last.
+                if(batch.get(batch.size()-1)==CLOSE){
+                    batch.remove(batch.size()-1);
+                    closing = true;
+                }
+                if(!batch.isEmpty()) writeBatch(batch);
+                batch.clear();
+            }
+            if(segment!=null){
+                segment.force(false);
+                segment.close();
+            }
+        }catch (InterruptedException e){
+            Thread.currentThread().interrupt();
+            stop(batch, e);
+        }catch (IOException io){
+            System.out.println("Order journal could not be closed cleanly. \nError message: "+io.getMessage());
+        }catch (Throwable t){
+            System.out.println("Order journal stopped after an error. \nError message: "+t);
+            stop(batch, t);
+        }
+    }
+
+    /**
+     * The purpose of this method is to fail every order that will now never be written, once the writer has to stop
+     * before the journal is closed: the batch being written and every order still queued. Orders submitted afterwards
+     * are turned away, so no caller is left waiting for a confirmation that will never come.
+     * @param batch the orders being written when the writer stopped.
+     * @param cause why the writer stopped.
+     */
+    private void stop(List<PendingOrder> batch, Throwable cause){
+        synchronized (this){
+            closed = true;
+            failure = cause;
+        }
+        abandonSegment();
+        for(PendingOrder order: batch) order.confirmation().completeExceptionally(cause);
+        // Nothing more can be queued once the journal is closed.
+        List<PendingOrder> queued = new ArrayList<>();
+        queue.drainTo(queued);
+        for(PendingOrder order: queued){
+            if(order!=CLOSE) order.confirmation().completeExceptionally(new RejectedExecutionException("The order journal stopped after an error", cause));
+        }
+    }
+
+    /**
+     * The purpose of this method is to append a batch of orders with a single write, sync it if the policy calls for it,
+     * and then confirm the orders. If anything fails, every order in the batch is failed and the segment is abandoned,
+     * so the next batch starts a new one.
+     * @param batch the orders to write, in the order they were submitted.
+     */
+    private void writeBatch(List<PendingOrder> batch){
+        StringBuilder lines = new StringBuilder(batch.size()*128);
+        for(PendingOrder order: batch) appendLine(lines, order);
+        ByteBuffer bytes = StandardCharsets.UTF_8.encode(lines.toString());
+        try {
+            if(segment==null || segment.size()>=segmentBytes) startSegment();
+            while(bytes.hasRemaining()) segment.write(bytes);
+            unsynced = true;
+            if(sync==Sync.ALWAYS || (sync==Sync.PERIODIC && System.nanoTime()-lastSync>=syncIntervalNanos)) syncSegment();
+        }catch (IOException io){
+            abandonSegment();
+            for(PendingOrder order: batch) order.confirmation().completeExceptionally(io);
+            return;
+        }
+        for(PendingOrder order: batch) order.confirmation().complete(order.time());
+    }
+
+    private void syncSegment(){
+        try {
+            if(segment!=null) segment.force(false);
+        }catch (IOException io){
+            // The orders were already confirmed as written; the next sync tries again.
+            System.out.println("Order journal could not be synced. \nError message: "+io.getMessage());
+        }
+        unsynced = false;
+        lastSync = System.nanoTime();
+    }
+
+    private void startSegment() throws IOException {
+        if(segment!=null){
+            segment.force(false);
+            segment.close();
+        }
+        segment = null;
+        segmentNumber++;
+        segment = FileChannel.open(directory.resolve(String.format("orders-%06d.log", segmentNumber)),
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    private void abandonSegment(){
+        try {
+            if(segment!=null) segment.close();
+        }catch (IOException ignored){
+            // The segment is being given up on anyway.
+        }
+        segment = null;
+    }
+
+    private static void appendLine(StringBuilder lines, PendingOrder order){
+        Geek geek = order.geek();
+        Garment garment = order.garment();
+        lines.append(order.time()).append('\t').append(garment.getProductCode()).append('\t');
+        appendField(lines, garment.getName());
+        lines.append('\t');
+        appendField(lines, geek.getName());
+        lines.append("\t0").append(geek.getPhoneNumber()).append('\t');
+        appendField(lines, geek.getEmailAddress());
+        lines.append('\t');
+        appendField(lines, geek.getMessage());
+        lines.append('\n');
+    }
+
+    private static void appendField(StringBuilder lines, String field){
+        for(int i=0;i<field.length();i++){
+            char c = field.charAt(i);
+            switch (c) {
+                case '\\' -> lines.append("\\\\");
+                case '\t' -> lines.append("\\t");
+                case '\n' -> lines.append("\\n");
+                case '\r' -> lines.append("\\r");
+                default -> lines.append(c);
+            }
+        }
+    }
+
+    private static int segmentNumberOf(Path file){
+        String name = file.getFileName().toString();
+        if(!name.startsWith("orders-") || !name.endsWith(".log")) return 0;
+        try {
+            return Integer.parseInt(name.substring("orders-".length(), name.length()-".log".length()));
+        }catch (NumberFormatException e){
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,353 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.IntToLongFunction;
+import java.util.function.IntUnaryOperator;
+import java.util.function.LongFunction;
+
+/**
+ * Keeps a popularity score for every product and every brand, updated one order at a time as orders are placed, so that
+ * search results can be ranked without going back over the order history. Scores decay with a half-life: an order placed
+ * one half-life ago counts half as much as one placed now.
+ *
+ * Rather than decaying every score as time passes, each order adds a weight that grows with the time it was placed
+ * (forward decay). Scores held this way compare exactly as the decayed scores would, and only the score of the product and
+ * brand being ordered ever changes. The weights are measured from a landmark time, which is moved forward, rescaling every
+ * score, if they grow too large.
+ *
+ * The scores are saved to a checkpoint file every so often, on a thread of their own so that recording an order never
+ * waits for the file, and when the app exits. On start up, only the orders recorded
+ * in the order journal after the checkpoint are replayed.
+ */
+public class PopularityTracker {
+
+    public static final double DEFAULT_HALF_LIFE_DAYS = 14;
+
+    // The number of orders recorded between checkpoints.
+    private static final int CHECKPOINT_EVERY = 100;
+    // The largest exponent a weight may have before the landmark is moved, far below where doubles overflow.
+    private static final double MAX_EXPONENT = 300;
+    private static final String HEADER = "popularity";
+    // Saves the checkpoints that fall due as orders are recorded, so the order journal's writer does not wait for them.
+    private static final ExecutorService CHECKPOINT_WRITER = Executors.newSingleThreadExecutor(task -> {
+        Thread thread = new Thread(task, "popularity-checkpoint");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Path checkpointPath;
+    private final double halfLifeDays;
+    private final double decayPerSecond;
+
+    // Every score is measured in weights relative to this time, in seconds since the epoch.
+    private double landmark = Instant.now().getEpochSecond();
+    // Product codes to positions in productCodes and productScores.
+    private ProductIndex productSlots = new ProductIndex(0);
+    private long[] productCodes = new long[16];
+    private double[] productScores = new double[16];
+    // Indexed by BrandDictionary id.
+    private double[] brandScores = new double[64];
+    // The time of the latest order counted, or null if there are none.
+    private Instant lastOrder;
+    private int ordersSinceCheckpoint;
+    // Set while a checkpoint has been handed to CHECKPOINT_WRITER but has not yet copied the scores.
+    private boolean checkpointPending;
+    // Held while a checkpoint is taken and saved, and taken before the tracker's own lock. Orders are only held up while the
+    // scores are copied, not while they are written.
+    private final Object checkpointLock = new Object();
+
+    /**
+     * @param checkpointPath the file the scores are saved to, or null if they should not be saved.
+     * @param halfLifeDays how long it takes for an order to count half as much.
+     */
+    public PopularityTracker(Path checkpointPath, double halfLifeDays) {
+        this.checkpointPath = checkpointPath;
+        this.halfLifeDays = halfLifeDays;
+        this.decayPerSecond = Math.log(2) / (halfLifeDays*24*60*60);
+    }
+
+    /**
+     * The purpose of this method is to create a tracker from its last checkpoint and then catch up on the orders placed since.
+     * If the checkpoint is missing, unreadable or was saved with a different half-life, every order in the journal is replayed.
+     * @param checkpointPath the file the scores are saved to.
+     * @param halfLifeDays how long it takes for an order to count half as much.
+     * @param ordersDirectory the directory of the order journal.
+     * @param products looks up a garment by product code, to find the brand of a replayed order. It may return null for
+     *                 a product that is no longer sold, in which case only the product's score is updated.
+     * @return a tracker that has counted every order in the journal.
+     * @throws IOException if the order journal cannot be read.
+     */
+    public static PopularityTracker open(Path checkpointPath, double halfLifeDays, Path ordersDirectory,
+                                         LongFunction<Garment> products) throws IOException {
+        PopularityTracker tracker = new PopularityTracker(checkpointPath, halfLifeDays);
+        if(Files.exists(checkpointPath) && !tracker.load()) tracker = new PopularityTracker(checkpointPath, halfLifeDays);
+        PopularityTracker loaded = tracker;
+        synchronized (loaded){
+            OrderJournal.readOrders(ordersDirectory, loaded.lastOrder, (time, productCode) -> {
+                Garment garment = products.apply(productCode);
+                loaded.count(productCode, garment==null ? -1 : garment.getGarmentSpecs().internBrandId(), time);
+            });
+        }
+        if(loaded.ordersSinceCheckpoint>0) loaded.checkpoint();
+        return loaded;
+    }
+
+    /**
+     * The purpose of this method is to count an order towards the popularity of the garment and its brand. A checkpoint
+     * that falls due is saved in the background.
+     * @param garment the garment ordered.
+     * @param time the time the order was placed.
+     */
+    public void recordOrder(Garment garment, Instant time){
+        boolean checkpointDue;
+        synchronized (this){
+            count(garment.getProductCode(), garment.getGarmentSpecs().internBrandId(), time);
+            checkpointDue = ordersSinceCheckpoint>=CHECKPOINT_EVERY && checkpointPath!=null && !checkpointPending;
+            if(checkpointDue) checkpointPending = true;
+        }
+        if(checkpointDue) CHECKPOINT_WRITER.execute(this::checkpoint);
+    }
+
+    /**
+     * The purpose of this method is to add an order to the scores. Must be called while holding the lock.
+     * @param productCode the product code of the garment ordered.
+     * @param brandId the BrandDictionary id of the garment's brand, or -1 if it is not known.
+     * @param time the time the order was placed.
+     */
+    private void count(long productCode, int brandId, Instant time){
+        double weight = weight(time);
+        addProductScore(productCode, weight);
+        if(brandId>=0) addBrandScore(brandId, weight);
+        if(lastOrder==null || time.isAfter(lastOrder)) lastOrder = time;
+        ordersSinceCheckpoint++;
+    }
+
+    private void addProductScore(long productCode, double score){
+        if(!productSlots.hasRoomFor(1)) productSlots = productSlots.grow(Math.max(16, productSlots.size()));
+        int slot = productSlots.put(productCode, productSlots.size());
+        if(slot<0){
+            slot = productSlots.size()-1;
+            if(slot==productScores.length){
+                productCodes = Arrays.copyOf(productCodes, slot*2);
+                productScores = Arrays.copyOf(productScores, slot*2);
+            }
+            productCodes[slot] = productCode;
+        }
+        productScores[slot] += score;
+    }
+
+    private void addBrandScore(int brandId, double score){
+        if(brandId>=brandScores.length) brandScores = Arrays.copyOf(brandScores, Math.max(brandId+1, brandScores.length*2));
+        brandScores[brandId] += score;
+    }
+
+    /**
+     * The purpose of this method is to find the weight of an order placed at a given time, moving the landmark first if the
+     * weight would be too large. Must be called while holding the lock.
+     * @param time the time the order was placed.
+     * @return the weight to add to the scores.
+     */
+    private double weight(Instant time){
+        double seconds = time.getEpochSecond()+time.getNano()/1e9;
+        if(decayPerSecond*(seconds-landmark)>MAX_EXPONENT){
+            double rescale = Math.exp(-decayPerSecond*(seconds-landmark));
+            for(int i = 0; i < productSlots.size(); i++) productScores[i] *= rescale;
+            for(int i = 0; i < brandScores.length; i++) brandScores[i] *= rescale;
+            landmark = seconds;
+        }
+        return Math.exp(decayPerSecond*(seconds-landmark));
+    }
+
+    /**
+     * @param productCode a product code.
+     * @return the number of orders of the product, each discounted by its age. E.g. two orders, one placed now and one
+     *         placed one half-life ago, make a score of 1.5.
+     */
+    public synchronized double getProductScore(long productCode){
+        int slot = productSlots.get(productCode);
+        return slot<0 ? 0 : decayedToNow(productScores[slot]);
+    }
+
+    /**
+     * @param brand a brand name.
+     * @return the number of orders of garments of the brand, each discounted by its age.
+     */
+    public synchronized double getBrandScore(String brand){
+        // Only looked up, so asking about a brand that has never been ordered does not add it to the dictionary.
+        int brandId = BrandDictionary.find(brand);
+        return brandId>=0 && brandId<brandScores.length ? decayedToNow(brandScores[brandId]) : 0;
+    }
+
+    private double decayedToNow(double score){
+        // A score so small it rounded to zero stays zero, even if the landmark is ahead of now.
+        if(score==0) return 0;
+        Instant now = Instant.now();
+        return score*Math.exp(-decayPerSecond*(now.getEpochSecond()+now.getNano()/1e9-landmark));
+    }
+
+    /**
+     * The purpose of this method is to order garments from most to least popular. Garments are ranked by the popularity of
+     * the product, then by the popularity of its brand. Garments that are equally popular, e.g. ones never ordered, keep
+     * their order.
+     * @param garments the garments to rank, e.g. the matches for a search, all of them in the inventory.
+     * @return a new list of the garments in ranked order, or the given list if no orders have been counted.
+     */
+    public List<Garment> rank(List<Garment> garments){
+        int[] ranked = rank(garments.size(), i -> garments.get(i).getProductCode(), i -> garments.get(i).getGarmentSpecs().getBrandId());
+        if(ranked==null) return garments;
+        List<Garment> rankedGarments = new ArrayList<>(ranked.length);
+        for(int position: ranked) rankedGarments.add(garments.get(position));
+        return rankedGarments;
+    }
+
+    /**
+     * The purpose of this method is to order the matches of a search from most to least popular, as rank(List) does, but
+     * reading only their product codes and brands from the inventory, so no Garment is created for any of them.
+     * @param matches the matches to rank.
+     * @return a new list of the matches in ranked order, or the given list if no orders have been counted.
+     */
+    public MatchList rank(MatchList matches){
+        int[] ranked = rank(matches.size(), matches::getProductCode, matches::getBrandId);
+        return ranked==null ? matches : matches.reorder(ranked);
+    }
+
+    /**
+     * The purpose of this method is to work out the ranked order of a list of garments.
+     * @param size the number of garments.
+     * @param productCodes gives the product code of the garment at each position.
+     * @param brandIds gives the BrandDictionary id of the brand of the garment at each position, or -1 if it has none.
+     * @return the positions of the garments in ranked order, or null if no orders have been counted.
+     */
+    private int[] rank(int size, IntToLongFunction productCodes, IntUnaryOperator brandIds){
+        double[] productScore = new double[size];
+        double[] brandScore = new double[size];
+        synchronized (this){
+            if(lastOrder==null) return null;
+            for(int i = 0; i < size; i++){
+                int slot = productSlots.get(productCodes.applyAsLong(i));
+                int brandId = brandIds.applyAsInt(i);
+                productScore[i] = slot<0 ? 0 : productScores[slot];
+                brandScore[i] = brandId>=0 && brandId<brandScores.length ? brandScores[brandId] : 0;
+            }
+        }
+
+        // Garments that have been ordered themselves come first. Usually only a few of the matches have been, so they are
+        // sorted directly.
+        int[] ranked = new int[size];
+        int orderedCount = 0;
+        for(int i = 0; i < size; i++) if(productScore[i]>0) ranked[orderedCount++] = i;
+        sortByScore(ranked, orderedCount, productScore, brandScore);
+
+        // The rest only differ by the popularity of their brand, which takes few distinct values, so they are bucketed by it,
+        // keeping their order within each bucket.
+        double[] levels = new double[size-orderedCount];
+        int rest = 0;
+        for(int i = 0; i < size; i++) if(productScore[i]==0) levels[rest++] = brandScore[i];
+        Arrays.sort(levels);
+        int distinct = 0;
+        for(int i = 0; i < rest; i++) if(distinct==0 || levels[i]!=levels[distinct-1]) levels[distinct++] = levels[i];
+        int[] bucket = new int[size];
+        int[] bucketStart = new int[distinct+1];
+        for(int i = 0; i < size; i++){
+            if(productScore[i]>0) continue;
+            // The most popular brands have the highest scores, so they take the first buckets.
+            bucket[i] = distinct-1-Arrays.binarySearch(levels, 0, distinct, brandScore[i]);
+            bucketStart[bucket[i]+1]++;
+        }
+        for(int b = 0; b < distinct; b++) bucketStart[b+1] += bucketStart[b];
+        for(int i = 0; i < size; i++) if(productScore[i]==0) ranked[orderedCount+bucketStart[bucket[i]]++] = i;
+        return ranked;
+    }
+
+    /**
+     * The purpose of this method is to sort positions in a list of garments from the most to the least popular product,
+     * then brand, keeping positions with equal scores in order. A merge sort, so it is stable without boxing the positions.
+     * @param positions the positions to sort, in ascending order.
+     * @param count the number of positions at the start of the array to sort.
+     * @param productScore the product score of each position.
+     * @param brandScore the brand score of each position.
+     */
+    private static void sortByScore(int[] positions, int count, double[] productScore, double[] brandScore){
+        int[] merged = new int[count];
+        for(int width = 1; width < count; width *= 2){
+            for(int from = 0; from < count-width; from += 2*width){
+                int middle = from+width, to = Math.min(from+2*width, count);
+                int left = from, right = middle, out = from;
+                while(left<middle && right<to){
+                    int a = positions[left], b = positions[right];
+                    // Take from the right run only if it is strictly more popular, so equal positions keep their order.
+                    boolean rightFirst = productScore[b]>productScore[a]
+                            || productScore[b]==productScore[a] && brandScore[b]>brandScore[a];
+                    merged[out++] = rightFirst ? positions[right++] : positions[left++];
+                }
+                while(left<middle) merged[out++] = positions[left++];
+                while(right<to) merged[out++] = positions[right++];
+                System.arraycopy(merged, from, positions, from, to-from);
+            }
+        }
+    }
+
+    /**
+     * The purpose of this method is to read the scores from the checkpoint file.
+     * @return false if the checkpoint cannot be read or was saved with a different half-life, in which case it is ignored.
+     */
+    private boolean load(){
+        try(BufferedReader reader = Files.newBufferedReader(checkpointPath)){
+            String[] header = reader.readLine().split("\t");
+            if(header.length!=4 || !header[0].equals(HEADER) || Double.parseDouble(header[1])!=halfLifeDays) return false;
+            landmark = Double.parseDouble(header[2]);
+            Instant savedLastOrder = header[3].equals("-") ? null : Instant.parse(header[3]);
+            String line;
+            while((line = reader.readLine())!=null){
+                String[] fields = line.split("\t");
+                double score = Double.parseDouble(fields[2]);
+                if(fields[0].equals("product")) addProductScore(Long.parseLong(fields[1]), score);
+                else if(fields[0].equals("brand")) addBrandScore(BrandDictionary.idOf(fields[1]), score);
+            }
+            lastOrder = savedLastOrder;
+            return true;
+        }catch (IOException | RuntimeException e){
+            System.out.println("Popularity checkpoint could not be read, replaying every order instead. \nError message: "+e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * The purpose of this method is to save the scores to the checkpoint file. The file is replaced in one step, so a crash
+     * while saving leaves the previous checkpoint in place. Checkpoints are saved one at a time, e.g. one due after an order
+     * and one taken as the app exits, so the latest scores are always the ones left in the file.
+     */
+    public void checkpoint(){
+        if(checkpointPath==null) return;
+        synchronized (checkpointLock){
+            StringBuilder text = new StringBuilder();
+            synchronized (this){
+                text.append(HEADER).append('\t').append(halfLifeDays).append('\t').append(landmark).append('\t')
+                        .append(lastOrder==null ? "-" : lastOrder.toString()).append('\n');
+                for(int slot = 0; slot < productSlots.size(); slot++){
+                    text.append("product\t").append(productCodes[slot]).append('\t').append(productScores[slot]).append('\n');
+                }
+                for(int brandId = 0; brandId < brandScores.length; brandId++){
+                    if(brandScores[brandId]>0) text.append("brand\t").append(BrandDictionary.nameOf(brandId)).append('\t').append(brandScores[brandId]).append('\n');
+                }
+                ordersSinceCheckpoint = 0;
+                checkpointPending = false;
+            }
+            try {
+                Path saving = checkpointPath.resolveSibling(checkpointPath.getFileName()+".tmp");
+                Files.writeString(saving, text);
+                Files.move(saving, checkpointPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            }catch (IOException io){
+                System.out.println("Popularity could not be saved. \nError message: "+io.getMessage());
+            }
+        }
+    }
+}
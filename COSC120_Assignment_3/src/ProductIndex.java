@@ -0,0 +1,140 @@
+import java.util.Arrays;
+
+/**
+ * A hash table from product code to the position of a garment, e.g. its ordinal in an Inventory or its row in a
+ * CatalogFile. Codes are kept as primitive longs in an open-addressing table with linear probing, so a lookup neither
+ * boxes the code nor follows any references.
+ *
+ * A table only ever grows. Entries are never removed or moved, so a reader that only trusts positions below a count it
+ * was handed (see get(long, int)) can search the table while later entries are being added to it.
+ */
+final class ProductIndex {
+
+    // The table is grown before it becomes more than half full, which keeps probe sequences short.
+    private static final int MIN_CAPACITY = 16;
+
+    private final long[] codes;
+    // The position stored with the code in the same slot, or -1 if the slot is empty.
+    private final int[] positions;
+    private int size;
+
+    /**
+     * @param expectedSize the number of codes the table should hold without growing.
+     */
+    ProductIndex(int expectedSize) {
+        int capacity = Math.max(MIN_CAPACITY, Integer.highestOneBit(Math.max(1, expectedSize)*2-1)*2);
+        codes = new long[capacity];
+        positions = new int[capacity];
+        Arrays.fill(positions, -1);
+    }
+
+    int size(){
+        return size;
+    }
+
+    /**
+     * @return the number of slots in the table, a power of two.
+     */
+    int capacity(){
+        return codes.length;
+    }
+
+    /**
+     * @param slot a slot of the table, e.g. to copy the table into a file.
+     * @return the code stored in the slot, or 0 if it is empty.
+     */
+    long codeAt(int slot){
+        return codes[slot];
+    }
+
+    /**
+     * @param slot a slot of the table.
+     * @return the position stored in the slot, or -1 if it is empty.
+     */
+    int positionAt(int slot){
+        return positions[slot];
+    }
+
+    /**
+     * @param extra the number of codes about to be added.
+     * @return whether the table can take that many more codes without growing.
+     */
+    boolean hasRoomFor(int extra){
+        return (long) (size+extra)*2 <= codes.length;
+    }
+
+    /**
+     * The purpose of this method is to copy the table into a larger one.
+     * @param extra the number of codes the copy should be able to take on top of the ones already held.
+     * @return a new table holding the same codes and positions.
+     */
+    ProductIndex grow(int extra){
+        ProductIndex grown = new ProductIndex(size+extra);
+        for(int slot = 0; slot < positions.length; slot++){
+            if(positions[slot]>=0) grown.put(codes[slot], positions[slot]);
+        }
+        return grown;
+    }
+
+    /**
+     * The purpose of this method is to add a code to the table, unless it is already there.
+     * The table must have room for it.
+     * @param code the product code.
+     * @param position the position of the garment with that code, which must not be negative.
+     * @return -1 if the code was added, otherwise the position already stored for it, which is left unchanged.
+     */
+    int put(long code, int position){
+        int slot = slot(code);
+        while(positions[slot]>=0){
+            if(codes[slot]==code) return positions[slot];
+            slot = (slot+1) & (codes.length-1);
+        }
+        codes[slot] = code;
+        positions[slot] = position;
+        size++;
+        return -1;
+    }
+
+    /**
+     * @param code a product code.
+     * @return the position stored for the code, or -1 if it is not in the table.
+     */
+    int get(long code){
+        return get(code, Integer.MAX_VALUE);
+    }
+
+    /**
+     * The purpose of this method is to look up a code while other threads may be adding to the table. Entries at or above
+     * the limit may still be being written, so they are ignored. An entry is never placed ahead of an older one in the
+     * probe sequence of a code, so ignoring newer entries never hides an older one.
+     * @param code a product code.
+     * @param limit one more than the highest position the caller knows to be complete.
+     * @return the position stored for the code if it is below the limit, or -1.
+     */
+    int get(long code, int limit){
+        int slot = slot(code);
+        int position;
+        while((position = positions[slot])>=0){
+            if(codes[slot]==code) return position<limit ? position : -1;
+            slot = (slot+1) & (codes.length-1);
+        }
+        return -1;
+    }
+
+    private int slot(long code){
+        return firstSlot(code, codes.length);
+    }
+
+    /**
+     * The purpose of this method is to find where the probe for a code starts, so that a copy of a table, e.g. one stored
+     * in a CatalogFile, can be searched in place: probe from this slot onwards, wrapping around, until the code or an
+     * empty slot is found.
+     * @param code a product code.
+     * @param capacity the number of slots in the table, a power of two.
+     * @return the first slot to probe.
+     */
+    static int firstSlot(long code, int capacity){
+        // Fibonacci hashing spreads sequential and clustered codes across the table.
+        return (int) ((code*0x9E3779B97F4A7C15L) >>> Long.numberOfLeadingZeros(capacity-1));
+    }
+}
@@ -0,0 +1,42 @@
+import java.util.Arrays;
+
+/**
+ * How a search is carried out over a set of garments, decided from their FilterStatistics before the search starts.
+ * The criteria are checked most selective first, so a garment is usually ruled out by the first criterion checked,
+ * and only the selective criteria are looked up in a bitmap index. Plans are immutable.
+ */
+final class QueryPlan {
+
+    private final GarmentMatcher matcher;
+    private final Filter[] indexedFilters;
+    private final double indexedFraction;
+
+    /**
+     * @param matcher the compiled search, checking its criteria in the planned order.
+     * @param indexedFilters the criteria worth looking up in an index, most selective first.
+     * @param indexedFraction the estimated fraction of the garments that the indexed criteria allow.
+     */
+    QueryPlan(GarmentMatcher matcher, Filter[] indexedFilters, double indexedFraction) {
+        this.matcher = matcher;
+        this.indexedFilters = indexedFilters;
+        this.indexedFraction = indexedFraction;
+    }
+
+    GarmentMatcher getMatcher(){
+        return matcher;
+    }
+
+    Filter[] getIndexedFilters(){
+        return indexedFilters;
+    }
+
+    double getIndexedFraction(){
+        return indexedFraction;
+    }
+
+    @Override
+    public String toString() {
+        return "check "+Arrays.toString(matcher.getOrder())+", index "+Arrays.toString(indexedFilters)
+                +String.format(" (%.4f of garments)", indexedFraction);
+    }
+}
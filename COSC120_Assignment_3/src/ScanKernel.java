@@ -0,0 +1,31 @@
+/**
+ * A way of checking every garment of a GarmentStore against a search in one pass over its columns.
+ *
+ * The vectorised kernel is built on the incubating Vector API, so it lives in the vector source folder and is loaded by
+ * name: the rest of the app compiles and runs without that module. It is only available if it was compiled and the JVM
+ * was started with --add-modules jdk.incubator.vector; otherwise segments check their garments one at a time.
+ */
+interface ScanKernel {
+
+    /**
+     * The kernel that checks many garments per instruction, or null if it is not available.
+     */
+    ScanKernel VECTORISED = load("VectorScanKernel");
+
+    /**
+     * The purpose of this method is to check every garment of a store against a search, including its price range.
+     * @param garments the garments to check.
+     * @param matcher the compiled search, which gives the order to check the filters in.
+     * @return the positions of the matching garments in the store, in ascending order.
+     */
+    int[] findMatchingRows(GarmentStore garments, GarmentMatcher matcher);
+
+    private static ScanKernel load(String className){
+        try {
+            return (ScanKernel) Class.forName(className).getDeclaredConstructor().newInstance();
+        }catch (ReflectiveOperationException | LinkageError | RuntimeException unavailable){
+            // The kernel was not compiled, the module was not added, or the hardware's vectors are too short.
+            return null;
+        }
+    }
+}
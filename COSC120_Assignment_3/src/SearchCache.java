@@ -0,0 +1,131 @@
+import java.util.*;
+
+/**
+ * A bounded cache of search results, keyed by a canonical form of the search criteria. When the cache holds too many
+ * searches, or too many garments across all of its results, the least recently used results are evicted first.
+ * Results are held as MatchLists, i.e. as the ordinals of the matching garments rather than as Garment objects.
+ *
+ * Results are only valid for the inventory they were found in, so the cache must be invalidated whenever the inventory
+ * changes. A search that was started before an invalidation cannot put its results in the cache afterwards.
+ */
+public class SearchCache {
+
+    public static final int DEFAULT_MAX_SEARCHES = 256;
+    public static final int DEFAULT_MAX_GARMENTS = 1_000_000;
+
+    private final int maxSearches;
+    private final int maxGarments;
+
+    // In access order, so the first entry is always the least recently used.
+    private final LinkedHashMap<Key,MatchList> results = new LinkedHashMap<>(16, 0.75f, true);
+    private long cachedGarments;
+    private long generation;
+    private long hits;
+    private long misses;
+
+    /**
+     * A canonical, hashable form of a search. Searches that match the same garments have equal keys however their
+     * criteria were built, e.g. a single size and a Set holding just that size, or the same brands in a different order.
+     * @param minPrice the lowest price searched for.
+     * @param maxPrice the highest price searched for.
+     * @param values for each Filter ordinal, null if the search does not use the filter, the bitmask of the accepted
+     *               values for an enum filter, or the Set of accepted values for any other filter.
+     */
+    public record Key(double minPrice, double maxPrice, List<Object> values) {
+
+        public static Key of(GarmentSpecs garmentSpecs){
+            Object[] values = new Object[Filter.values().length];
+            for(Filter filter: Filter.values()){
+                if(!garmentSpecs.hasFilter(filter)) continue;
+                if(filter.isEnumValued()) values[filter.ordinal()] = garmentSpecs.getValueMask(filter);
+                else if(garmentSpecs.getFilter(filter) instanceof Collection<?> accepted) values[filter.ordinal()] = Set.copyOf(accepted);
+                else values[filter.ordinal()] = Set.of(garmentSpecs.getFilter(filter));
+            }
+            return new Key(garmentSpecs.getMinPrice(), garmentSpecs.getMaxPrice(), Arrays.asList(values));
+        }
+    }
+
+    public SearchCache() {
+        this(DEFAULT_MAX_SEARCHES, DEFAULT_MAX_GARMENTS);
+    }
+
+    /**
+     * @param maxSearches the most searches whose results are kept.
+     * @param maxGarments the most garments kept across all the results. A larger result is never cached.
+     */
+    public SearchCache(int maxSearches, int maxGarments) {
+        this.maxSearches = maxSearches;
+        this.maxGarments = maxGarments;
+    }
+
+    /**
+     * The purpose of this method is to look up the results of a search, counting a hit or a miss.
+     * @param key the search.
+     * @return the cached, unmodifiable results, or null if the search is not cached.
+     */
+    public synchronized MatchList get(Key key){
+        MatchList cached = results.get(key);
+        if(cached==null) misses++;
+        else hits++;
+        return cached;
+    }
+
+    /**
+     * The purpose of this method is to look up the results of a search without counting a hit or a miss, for searches
+     * that can use cached results but do not cache their own, so they would otherwise only ever count as misses.
+     * @param key the search.
+     * @return the cached, unmodifiable results, or null if the search is not cached.
+     */
+    public synchronized MatchList peek(Key key){
+        return results.get(key);
+    }
+
+    /**
+     * @return the current generation. Read it before searching and pass it to put, so results found before an
+     *         invalidation are not cached.
+     */
+    public synchronized long generation(){
+        return generation;
+    }
+
+    /**
+     * The purpose of this method is to cache the results of a search, evicting the least recently used results if needed.
+     * @param key the search.
+     * @param matches the results of the search, which cannot be modified, so the cache keeps them as they are.
+     * @param generation the generation read before the search was started.
+     * @return the results.
+     */
+    public synchronized MatchList put(Key key, MatchList matches, long generation){
+        if(generation!=this.generation || matches.size()>maxGarments) return matches;
+        MatchList replaced = results.put(key, matches);
+        if(replaced!=null) cachedGarments -= replaced.size();
+        cachedGarments += matches.size();
+        Iterator<MatchList> leastRecentlyUsed = results.values().iterator();
+        while(results.size()>maxSearches || cachedGarments>maxGarments){
+            cachedGarments -= leastRecentlyUsed.next().size();
+            leastRecentlyUsed.remove();
+        }
+        return matches;
+    }
+
+    /**
+     * The purpose of this method is to discard every cached result, e.g. because the inventory has been reloaded.
+     */
+    public synchronized void invalidate(){
+        results.clear();
+        cachedGarments = 0;
+        generation++;
+    }
+
+    public synchronized int size(){
+        return results.size();
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+}
@@ -0,0 +1,178 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Searches the inventory without any user interface, so the same search engine can be used by the Swing app,
+ * from the command line or on a server. The inventory can be replaced at any time, e.g. when the inventory file is
+ * reloaded; a search that is already running finishes against the inventory it started with.
+ * Results are cached, so a repeated search does not scan the inventory again until the inventory is replaced or
+ * garments are added to it.
+ */
+public class SearchService {
+
+    private volatile Inventory inventory;
+    private final SearchCache cache;
+    // The size of the inventory when the cached results were found. Garments can be added to the inventory directly, e.g.
+    // through getInventory, so it is checked before the cache is used.
+    private int cachedSize;
+
+    public SearchService(Inventory inventory) {
+        this(inventory, new SearchCache());
+    }
+
+    public SearchService(Inventory inventory, SearchCache cache) {
+        this.inventory = inventory;
+        this.cache = cache;
+        this.cachedSize = inventory.size();
+    }
+
+    /**
+     * The purpose of this method is to create a search service over the garments in an inventory file.
+     * @param inventoryPath the location of the inventory file.
+     * @return a SearchService over every garment in the file.
+     * @throws IOException if the file cannot be read.
+     * @throws IllegalArgumentException if a line of the file cannot be parsed.
+     */
+    public static SearchService load(Path inventoryPath) throws IOException {
+        Inventory inventory = new Inventory();
+        inventory.addGarments(InventoryParser.parse(inventoryPath));
+        return new SearchService(inventory);
+    }
+
+    public Inventory getInventory() {
+        return inventory;
+    }
+
+    /**
+     * The purpose of this method is to replace the inventory, discarding the cached results of the old one.
+     * @param inventory the new inventory.
+     */
+    public synchronized void setInventory(Inventory inventory) {
+        this.inventory = inventory;
+        cachedSize = inventory.size();
+        cache.invalidate();
+    }
+
+    /**
+     * The purpose of this method is to discard the cached results if garments have been added to the inventory since
+     * they were found. Garments are only ever added, so the inventory has changed if and only if it has grown.
+     */
+    private synchronized void discardStaleResults(){
+        int size = inventory.size();
+        if(size!=cachedSize){
+            cachedSize = size;
+            cache.invalidate();
+        }
+    }
+
+    public SearchCache getCache() {
+        return cache;
+    }
+
+    /**
+     * @return the brands in the inventory that a user can choose from, not including "NA". The set cannot be modified.
+     */
+    public Set<String> getAvailableBrands(){
+        return inventory.getBrands();
+    }
+
+    /**
+     * The purpose of this method is to look up a garment by its product code, e.g. to place an order for it.
+     * @param productCode the product code.
+     * @return the garment with that product code in the current inventory, or null if there is none.
+     */
+    public Garment findByProductCode(long productCode){
+        return inventory.findByProductCode(productCode);
+    }
+
+    /**
+     * The purpose of this method is to find every garment that matches a search.
+     * @param garmentSpecs the search criteria.
+     * @return the matching garments, in inventory order. The list cannot be modified.
+     */
+    public MatchList search(GarmentSpecs garmentSpecs){
+        discardStaleResults();
+        SearchCache.Key key = SearchCache.Key.of(garmentSpecs);
+        MatchList cached = cache.get(key);
+        if(cached!=null) return cached;
+        // Read the generation before the inventory, so results from an inventory that is replaced mid-search are not cached.
+        long generation = cache.generation();
+        return cache.put(key, inventory.findMatch(garmentSpecs), generation);
+    }
+
+    /**
+     * The purpose of this method is to find one page of matches. Unless the search is cached, the inventory is only
+     * searched as far as needed to fill the page, and the partial results are not cached, nor counted by the cache.
+     * @param garmentSpecs the search criteria.
+     * @param offset the number of matches to skip.
+     * @param limit the most matches to return.
+     * @return up to limit matching garments, starting at the given offset, in inventory order. The list cannot be modified.
+     * @throws IllegalArgumentException if the offset or the limit is negative.
+     */
+    public List<Garment> search(GarmentSpecs garmentSpecs, int offset, int limit){
+        if(offset<0 || limit<0) throw new IllegalArgumentException("Offset and limit must not be negative: "+offset+", "+limit);
+        discardStaleResults();
+        MatchList cached = cache.peek(SearchCache.Key.of(garmentSpecs));
+        if(cached!=null) return cached.subList(Math.min(offset, cached.size()), (int) Math.min((long) offset+limit, cached.size()));
+        return inventory.findMatch(garmentSpecs, offset, limit);
+    }
+
+    /**
+     * The purpose of this method is to search the inventory lazily, as the returned stream is consumed.
+     * Results found this way are not cached, nor counted by the cache.
+     * @param garmentSpecs the search criteria.
+     * @return a sequential stream of the matching garments, in inventory order.
+     */
+    public Stream<Garment> stream(GarmentSpecs garmentSpecs){
+        discardStaleResults();
+        MatchList cached = cache.peek(SearchCache.Key.of(garmentSpecs));
+        return cached!=null ? cached.stream() : inventory.streamMatches(garmentSpecs);
+    }
+
+    /**
+     * The purpose of this method is to count how many garments there are for each value of every filter, given the
+     * choices made so far, e.g. to show next to each option of a search form.
+     * @param search the choices made so far.
+     * @return the facet counts for the search.
+     */
+    public FacetCounts countFacets(GarmentSpecs search){
+        return inventory.countFacets(search);
+    }
+
+    /**
+     * The purpose of this method is to count the garments for each value of every filter, giving up part way if the
+     * count is no longer wanted.
+     * @param search the choices made so far.
+     * @param cancelled checked as the inventory is counted, e.g. a SwingWorker's isCancelled.
+     * @return the facet counts for the search.
+     * @throws java.util.concurrent.CancellationException if cancelled returns true before the count is finished.
+     */
+    public FacetCounts countFacets(GarmentSpecs search, BooleanSupplier cancelled){
+        return inventory.countFacets(search, cancelled);
+    }
+
+    /**
+     * The purpose of this method is to search the inventory, handing over the matches in batches as they are found.
+     * @param garmentSpecs the search criteria.
+     * @param onBatch called with each non-empty batch of matching garments, in inventory order.
+     *                It may throw an unchecked exception, e.g. a CancellationException, to stop the search early, in
+     *                which case the results are not cached. Cached results are handed over as a single batch.
+     * @return every matching garment, in inventory order. The list cannot be modified.
+     */
+    public MatchList search(GarmentSpecs garmentSpecs, Consumer<List<Garment>> onBatch){
+        discardStaleResults();
+        SearchCache.Key key = SearchCache.Key.of(garmentSpecs);
+        MatchList cached = cache.get(key);
+        if(cached!=null){
+            if(!cached.isEmpty()) onBatch.accept(cached);
+            return cached;
+        }
+        long generation = cache.generation();
+        return cache.put(key, inventory.findMatch(garmentSpecs, onBatch), generation);
+    }
+}
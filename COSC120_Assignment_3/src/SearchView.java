@@ -1,12 +1,14 @@
 import javax.swing.*;
+import javax.swing.Timer;
 import javax.swing.event.DocumentEvent;
 import javax.swing.event.DocumentListener;
 import javax.swing.event.ListSelectionListener;
 import java.awt.*;
 import java.awt.event.ActionListener;
 import java.awt.event.ItemEvent;
-import java.util.HashSet;
-import java.util.Set;
+import java.util.*;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
 
 public class SearchView {
 
@@ -17,12 +19,17 @@ public class SearchView {
     private final CardLayout cardLayout = new CardLayout();
 
     // Create string variables to store the names of each card layout
-    private final String IMAGE_PANEL = "T-Shirt Images";
-    private final String T_SHIRT_PANEL = "T-Shirt";
-    private final String HOODIE_PANEL = "Hoodie";
+    private static final String IMAGE_PANEL = "T-Shirt Images";
+    private static final String T_SHIRT_PANEL = "T-Shirt";
+    private static final String HOODIE_PANEL = "Hoodie";
 
     // Create a JPanel for the above cards
     private JPanel garmentTypePanel;
+    // The cards added to the panel so far. The hoodie and T-shirt cards are only built once that type is first chosen.
+    private final Set<String> builtCards = new HashSet<>();
+    // The size garment images are displayed at in the placeholder card.
+    private static final int GARMENT_IMAGE_WIDTH = 100;
+    private static final int GARMENT_IMAGE_HEIGHT = 128;
 
     // Create variables to store the minimum and maximum price the user is willing to spend.
     private final int defaultMinPrice = 0;
@@ -33,8 +40,23 @@ public class SearchView {
     private final JLabel feedbackMin = new JLabel("");
     private final JLabel feedbackMax = new JLabel("");
 
-    // Available brands from the inventory.
-    private final Set<String> availableBrands;
+    // Available brands from the inventory. Null while the inventory is loading.
+    private Set<String> availableBrands;
+    // The options of the brand list, filled in once the brands are known.
+    private final DefaultListModel<String> brandOptions = new DefaultListModel<>();
+    private JList<String> brandList;
+
+    // Used to count the garments available for each option as the user makes their choices. Null if counts are not shown.
+    private SearchService searchService;
+    private FacetCounts facetCounts;
+    // Counts are only recounted once the user pauses for this long, e.g. between the keystrokes of a price.
+    private static final int FACET_DELAY = 150;
+    private final Timer facetTimer = new Timer(FACET_DELAY, e -> countFacets());
+    // The count running in the background, if any. Only used on the event dispatch thread.
+    private FacetWorker facetWorker;
+    // The lists and drop-down lists that show counts next to their options, and the material buttons, whose labels show counts.
+    private final List<JComponent> facetViews = new ArrayList<>();
+    private final Map<Material,JRadioButton> materialButtons = new EnumMap<>(Material.class);
 
     // Create variables to store the users choices.
     private Set<Size> sizes;
@@ -46,9 +68,19 @@ public class SearchView {
     private SleeveType sleeveType;
 
     public SearchView(Set<String> availableBrands) {
+        this(availableBrands, null);
+    }
+
+    /**
+     * @param availableBrands the brands to choose from, or null to show the brand list as loading until showInventory is called.
+     * @param searchService used to count the garments available for each option, or null to show no counts.
+     */
+    public SearchView(Set<String> availableBrands, SearchService searchService) {
         this.availableBrands = availableBrands;
+        this.searchService = searchService;
         this.chosenBrands = new HashSet<>();
         this.sizes = new HashSet<>();
+        facetTimer.setRepeats(false);
     }
 
     // MAIN SEARCH VIEW
@@ -77,14 +109,154 @@ public class SearchView {
         garmentTypePanel = new JPanel();
         garmentTypePanel.setAlignmentX(0);
         garmentTypePanel.setLayout(cardLayout);
-        garmentTypePanel.add(this.imagePanel(),IMAGE_PANEL);
-        garmentTypePanel.add(this.userInputHoodie(),HOODIE_PANEL);
-        garmentTypePanel.add(this.userInputTShirt(), T_SHIRT_PANEL);
+        showCard(IMAGE_PANEL);
         filters.add(garmentTypePanel);
 
+        updateFacets();
         return filters;
     }
 
+    /**
+     * The purpose of this method is to fill in the brands and start showing counts once the inventory has loaded.
+     * Any choices the user made while it was loading are kept.
+     * @param searchService searches the loaded inventory.
+     */
+    public void showInventory(SearchService searchService){
+        availableBrands = searchService.getAvailableBrands();
+        brandOptions.clear();
+        brandOptions.addAll(availableBrands);
+        brandList.setEnabled(true);
+        this.searchService = searchService;
+        updateFacets();
+    }
+
+    // FACET COUNTS
+    /**
+     * The purpose of this method is to recount the garments available for each option after the user changes a choice,
+     * and show the new counts. Counting reads the whole inventory, so it is done in the background, and only once the
+     * user has stopped changing their choices for a moment.
+     */
+    public void updateFacets(){
+        if(searchService==null) return;
+        facetTimer.restart();
+    }
+
+    /**
+     * The purpose of this method is to start counting the garments for the choices as they are now, abandoning any count
+     * for earlier choices that is still running.
+     */
+    private void countFacets(){
+        if(facetWorker!=null) facetWorker.cancel(true);
+        facetWorker = new FacetWorker(searchService, getPartialSearch());
+        facetWorker.execute();
+    }
+
+    /**
+     * The purpose of this method is to show new counts next to every option.
+     * @param counted the counts for the choices made so far.
+     */
+    private void displayFacets(FacetCounts counted){
+        facetCounts = counted;
+        for(Map.Entry<Material,JRadioButton> button: materialButtons.entrySet()){
+            button.getValue().setText(withCount(Filter.MATERIAL, button.getKey()));
+        }
+        for(JComponent view: facetViews) view.repaint();
+    }
+
+    /**
+     * Counts the garments available for each option off the event dispatch thread, and shows the counts unless the
+     * choices have changed again in the meantime.
+     */
+    private class FacetWorker extends SwingWorker<FacetCounts, Void> {
+        private final SearchService searchService;
+        private final GarmentSpecs search;
+
+        private FacetWorker(SearchService searchService, GarmentSpecs search) {
+            this.searchService = searchService;
+            this.search = search;
+        }
+
+        @Override
+        protected FacetCounts doInBackground() {
+            // Stops between segments once a newer count has replaced this one.
+            return searchService.countFacets(search, this::isCancelled);
+        }
+
+        @Override
+        protected void done() {
+            if(isCancelled() || facetWorker!=this) return;
+            facetWorker = null;
+            try {
+                displayFacets(get());
+            }catch (InterruptedException | ExecutionException e){
+                System.out.println("Option counts could not be updated. \nError message: "+e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * The purpose of this method is to return the search as chosen so far. Unlike a search that is ready to run,
+     * it may have no garment type or sizes chosen yet.
+     * @return the choices made so far, leaving out any that are NA.
+     */
+    public GarmentSpecs getPartialSearch(){
+        Map<Filter,Object> filterMap = new HashMap<>();
+        if(garmentType!=GarmentType.SELECT_TYPE) filterMap.put(Filter.GARMENT_TYPE, garmentType);
+        if(!sizes.isEmpty()) filterMap.put(Filter.SIZE, sizes);
+        if(!chosenBrands.isEmpty()) filterMap.put(Filter.BRAND, chosenBrands);
+        if(material!=null && !material.equals(Material.NA)) filterMap.put(Filter.MATERIAL, material);
+        if(garmentType.equals(GarmentType.HOODIE)){
+            if(hoodieStyle!=null && !hoodieStyle.equals(HoodieStyle.NA)) filterMap.put(Filter.HOODIE_STYLE, hoodieStyle);
+            if(pocketType!=null && !pocketType.equals(PocketType.NA)) filterMap.put(Filter.POCKET_TYPE, pocketType);
+        }
+        if(garmentType.equals(GarmentType.T_SHIRT)){
+            if(neckline!=null && !neckline.equals(Neckline.NA)) filterMap.put(Filter.NECKLINE, neckline);
+            if(sleeveType!=null && !sleeveType.equals(SleeveType.NA)) filterMap.put(Filter.SLEEVE_TYPE, sleeveType);
+        }
+        return new GarmentSpecs(filterMap, minPrice, maxPrice);
+    }
+
+    /**
+     * The purpose of this method is to label an option with the number of garments available for it.
+     * @param key the filter the option belongs to.
+     * @param value the option.
+     * @return the option's label, followed by its count in brackets unless it is a "no preference" option.
+     */
+    private String withCount(Filter key, Object value){
+        if(facetCounts==null || value==GarmentType.SELECT_TYPE || (value instanceof Enum<?> e && e.name().equals("NA"))) return String.valueOf(value);
+        return value+" ("+facetCounts.getCount(key, value)+")";
+    }
+
+    /**
+     * Shows the number of garments available next to each option of a list or drop-down list.
+     */
+    private class FacetRenderer extends DefaultListCellRenderer {
+        private static final long serialVersionUID = 1L;
+        private final Filter key;
+
+        private FacetRenderer(Filter key) {
+            this.key = key;
+        }
+
+        @Override
+        public Component getListCellRendererComponent(JList<?> list, Object value, int index, boolean isSelected, boolean cellHasFocus) {
+            super.getListCellRendererComponent(list, value, index, isSelected, cellHasFocus);
+            setText(withCount(key, value));
+            return this;
+        }
+    }
+
+    /**
+     * The purpose of this method is to show counts next to the options of a list or drop-down list.
+     * @param view the JList or JComboBox.
+     * @param key the filter its options belong to.
+     */
+    private void showFacets(JComponent view, Filter key){
+        if(view instanceof JList<?> list) list.setCellRenderer(new FacetRenderer(key));
+        if(view instanceof JComboBox<?> comboBox) comboBox.setRenderer(new FacetRenderer(key));
+        facetViews.add(view);
+    }
+
     // INNER PANELS
     /**
      * The purpose of this method is to have the user select the type of garment that they are interested in.
@@ -103,6 +275,7 @@ public class SearchView {
         garmentTypeJComboBox.addItemListener(e -> {
             if(e.getStateChange() == ItemEvent.SELECTED) ifTypeSelected(garmentTypeJComboBox);
         });
+        showFacets(garmentTypeJComboBox, Filter.GARMENT_TYPE);
         // Create the JPanel that displays everything to the user.
         JPanel garmentTypeSelectionPanel = new JPanel();
         garmentTypeSelectionPanel.setLayout(new BoxLayout(garmentTypeSelectionPanel, BoxLayout.Y_AXIS));
@@ -123,9 +296,27 @@ public class SearchView {
         assert garmentType != null;
 
         // Change the card to display the appropriate section based off the user's selection.
-        if(garmentType.equals(GarmentType.SELECT_TYPE)) cardLayout.show(garmentTypePanel, IMAGE_PANEL);
-        else if(garmentType.equals(GarmentType.T_SHIRT)) cardLayout.show(garmentTypePanel, T_SHIRT_PANEL);
-        else if(garmentType.equals(GarmentType.HOODIE)) cardLayout.show(garmentTypePanel, HOODIE_PANEL);
+        if(garmentType.equals(GarmentType.SELECT_TYPE)) showCard(IMAGE_PANEL);
+        else if(garmentType.equals(GarmentType.T_SHIRT)) showCard(T_SHIRT_PANEL);
+        else if(garmentType.equals(GarmentType.HOODIE)) showCard(HOODIE_PANEL);
+        updateFacets();
+    }
+
+    /**
+     * The purpose of this method is to display a card of the garment type panel, building it the first time it is shown.
+     * @param card the name of the card.
+     */
+    private void showCard(String card){
+        if(builtCards.add(card)){
+            JPanel panel = switch (card) {
+                case HOODIE_PANEL -> this.userInputHoodie();
+                case T_SHIRT_PANEL -> this.userInputTShirt();
+                default -> this.imagePanel();
+            };
+            garmentTypePanel.add(panel, card);
+            garmentTypePanel.revalidate();
+        }
+        cardLayout.show(garmentTypePanel, card);
     }
 
     /**
@@ -158,11 +349,17 @@ public class SearchView {
         na.setActionCommand(Material.NA.name());
 
         // Update the material variable when the user makes a selection.
-        ActionListener actionListener = e-> material = Material.valueOf(materialButtonGroup.getSelection().getActionCommand().toUpperCase());
+        ActionListener actionListener = e-> {
+            material = Material.valueOf(materialButtonGroup.getSelection().getActionCommand().toUpperCase());
+            updateFacets();
+        };
         cotton.addActionListener(actionListener);
         polyester.addActionListener(actionListener);
         woolBlend.addActionListener(actionListener);
         na.addActionListener(actionListener);
+        materialButtons.put(Material.COTTON, cotton);
+        materialButtons.put(Material.POLYESTER, polyester);
+        materialButtons.put(Material.WOOL_BLEND, woolBlend);
 
         // Create the JPanel that displays everything to the user.
         JPanel materialPanel = new JPanel();
@@ -195,8 +392,12 @@ public class SearchView {
         SwingUtilities.invokeLater(() -> scrollPane.getViewport().setViewPosition( new Point(0, 0) ));
         
         // Update the sizes variable when the user selects a size.
-        ListSelectionListener listSelectionListener = e -> sizes = new HashSet<>(selectSizes.getSelectedValuesList());
+        ListSelectionListener listSelectionListener = e -> {
+            sizes = new HashSet<>(selectSizes.getSelectedValuesList());
+            updateFacets();
+        };
         selectSizes.addListSelectionListener(listSelectionListener);
+        showFacets(selectSizes, Filter.SIZE);
 
         // Create the JPanel that displays everything to the user.
         JPanel sizesPanel = new JPanel();
@@ -243,11 +444,13 @@ public class SearchView {
             public void insertUpdate(DocumentEvent e) {
                 if(!checkMin(min)) min.requestFocus();
                 checkMax(max);
+                updateFacets();
             }
             @Override
             public void removeUpdate(DocumentEvent e) {
                 if(!checkMin(min))min.requestFocus();
                 checkMax(max);
+                updateFacets();
             }
             @Override
             public void changedUpdate(DocumentEvent e) {
@@ -260,11 +463,13 @@ public class SearchView {
             public void insertUpdate(DocumentEvent e) {
                 if(!checkMax(max)) max.requestFocusInWindow();
                 checkMin(min);
+                updateFacets();
             }
             @Override
             public void removeUpdate(DocumentEvent e) {
                 if(!checkMax(max))max.requestFocusInWindow();
                 checkMin(min);
+                updateFacets();
             }
             @Override
             public void changedUpdate(DocumentEvent e) {
@@ -383,11 +588,20 @@ public class SearchView {
      * @return a JPanel with a JList of brands for the user to select from.
      */
     public JPanel userInputBrands(){
-        JList<String> selectItems = new JList<>(availableBrands.toArray(new String[0]));
+        // While the inventory is loading, the list shows that it is and cannot be chosen from.
+        if(availableBrands==null) brandOptions.addElement("Loading brands...");
+        else brandOptions.addAll(availableBrands);
+        JList<String> selectItems = new JList<>(brandOptions);
+        selectItems.setEnabled(availableBrands!=null);
+        brandList = selectItems;
         selectItems.setSelectionMode(ListSelectionModel.MULTIPLE_INTERVAL_SELECTION);
         JScrollPane scrollPane = this.generateJListScrollPane(selectItems);
-        ListSelectionListener listSelectionListener = e ->  chosenBrands = new HashSet<>(selectItems.getSelectedValuesList());
+        ListSelectionListener listSelectionListener = e -> {
+            chosenBrands = new HashSet<>(selectItems.getSelectedValuesList());
+            updateFacets();
+        };
         selectItems.addListSelectionListener(listSelectionListener);
+        showFacets(selectItems, Filter.BRAND);
 
         return generateFinalScrollJPanel("Select your favourite brand(s) (optional)", scrollPane);
     }
@@ -425,8 +639,10 @@ public class SearchView {
         jComboBox.addItemListener(e -> {
             if (e.getStateChange() == ItemEvent.SELECTED) {
                 hoodieStyle = (HoodieStyle) jComboBox.getSelectedItem();
+                updateFacets();
             }
         });
+        showFacets(jComboBox, Filter.HOODIE_STYLE);
 
         // Call the generateComboBoxPanel to return a panel with the HoodieStyle comboBox.
         return generateComboBoxPanel(jComboBox);
@@ -447,8 +663,10 @@ public class SearchView {
         jComboBox.addItemListener(e -> {
             if (e.getStateChange() == ItemEvent.SELECTED) {
                 pocketType = (PocketType) jComboBox.getSelectedItem();
+                updateFacets();
             }
         });
+        showFacets(jComboBox, Filter.POCKET_TYPE);
 
         // Call the generateComboBoxPanel to return a panel with the pocketType comboBox.
         return generateComboBoxPanel(jComboBox);
@@ -470,8 +688,10 @@ public class SearchView {
         jComboBox.addItemListener(e -> {
             if (e.getStateChange() == ItemEvent.SELECTED) {
                 neckline = (Neckline) jComboBox.getSelectedItem();
+                updateFacets();
             }
         });
+        showFacets(jComboBox, Filter.NECKLINE);
 
         // Call the generateComboBoxPanel to return a panel with the neckline comboBox.
         return generateComboBoxPanel(jComboBox);
@@ -492,8 +712,10 @@ public class SearchView {
         jComboBox.addItemListener(e -> {
             if (e.getStateChange() == ItemEvent.SELECTED) {
                 sleeveType = (SleeveType) jComboBox.getSelectedItem();
+                updateFacets();
             }
         });
+        showFacets(jComboBox, Filter.SLEEVE_TYPE);
 
         // Call the generateComboBoxPanel to return a panel with the sleeveType comboBox.
         return generateComboBoxPanel(jComboBox);
@@ -522,11 +744,12 @@ public class SearchView {
      * @return a JPanel with images that is displayed while the user selects their preferred garment type.
      */
     public JPanel imagePanel(){
-        // Create image icons
-        JLabel breakingBad = new JLabel(new ImageIcon("breakingBad_.jpg"));
-        JLabel keepCalm = new JLabel(new ImageIcon("keepCalm_.jpg"));
-        JLabel walkingDead = new JLabel(new ImageIcon("walkingDead_.jpg"));
-        JLabel westWorld = new JLabel(new ImageIcon("westWorld_.jpg"));
+        // Create image icons. They are loaded in the background and kept, so rebuilding the view does not load them again.
+        ImageCache images = ImageCache.shared();
+        JLabel breakingBad = new JLabel(images.getIcon("breakingBad_.jpg", GARMENT_IMAGE_WIDTH, GARMENT_IMAGE_HEIGHT));
+        JLabel keepCalm = new JLabel(images.getIcon("keepCalm_.jpg", GARMENT_IMAGE_WIDTH, GARMENT_IMAGE_HEIGHT));
+        JLabel walkingDead = new JLabel(images.getIcon("walkingDead_.png", GARMENT_IMAGE_WIDTH, GARMENT_IMAGE_HEIGHT));
+        JLabel westWorld = new JLabel(images.getIcon("westWorld_.jpg", GARMENT_IMAGE_WIDTH, GARMENT_IMAGE_HEIGHT));
 
         // Create the JPanel that displays everything to the user.
         JPanel imagePanel = new JPanel();
@@ -0,0 +1,130 @@
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A stress test of Inventory's copy-on-write snapshots. One writer adds garments in batches of random sizes, some of a
+ * single garment and some spanning several segments, while reader threads search the inventory without pause. Every
+ * search must be linearizable: it returns exactly the garments of some whole number of batches, in the order they were
+ * added, no fewer than had been added when the search started and no more than had been started when it finished, and
+ * never fewer than the same reader's previous search.
+ *
+ * Build and run from the project directory, e.g.:
+ *   javac -d out/test src/*.java bench/*.java test/*.java
+ *   java -cp out/test InventoryStressTest garments=200000 readers=4
+ *
+ * Options, all optional: garments (the number the writer adds), readers (the number of searching threads) and seed.
+ * Exits with status 1 if any search saw an inconsistent inventory.
+ */
+public class InventoryStressTest {
+
+    public static void main(String[] args) throws Exception {
+        Map<String,String> options = parseOptions(args);
+        int size = Integer.parseInt(options.getOrDefault("garments", "200000"));
+        int readers = Integer.parseInt(options.getOrDefault("readers", "4"));
+        long seed = Long.parseLong(options.getOrDefault("seed", "42"));
+
+        List<Garment> garments = new SyntheticCatalog(size, 0.05, 50, seed).getGarments();
+        Inventory inventory = new Inventory();
+        // Every garment, whatever its filters and price.
+        GarmentSpecs everything = new GarmentSpecs(new HashMap<>(), 0, Double.MAX_VALUE);
+
+        // The number of garments whose batch has been published, and whose batch has been started. A search that starts
+        // after a batch is published must see it, and one that finishes before a batch is started must not.
+        AtomicInteger published = new AtomicInteger();
+        AtomicInteger started = new AtomicInteger();
+        // The total number of garments after each batch, i.e. the only sizes a search may see.
+        Set<Integer> batchEnds = ConcurrentHashMap.newKeySet();
+        batchEnds.add(0);
+        AtomicLong searches = new AtomicLong();
+        List<String> failures = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch finished = new CountDownLatch(1);
+
+        ExecutorService pool = Executors.newFixedThreadPool(readers);
+        List<Future<?>> readerResults = new ArrayList<>();
+        for(int r = 0; r < readers; r++){
+            int reader = r;
+            readerResults.add(pool.submit(() -> {
+                int previous = 0;
+                // Readers take turns at the three ways of reading the inventory.
+                for(int read = reader; finished.getCount()>0 && failures.size()<10; read++){
+                    int lowest = published.get();
+                    List<Garment> found = switch (read % 3) {
+                        case 0 -> inventory.findMatch(everything);
+                        case 1 -> inventory.streamMatches(everything).toList();
+                        default -> {
+                            List<Garment> batches = new ArrayList<>();
+                            inventory.findMatch(everything, batches::addAll);
+                            yield batches;
+                        }
+                    };
+                    int highest = started.get();
+                    String failure = check(garments, found, lowest, highest, previous, batchEnds);
+                    if(failure!=null) failures.add("Reader "+reader+", search "+read+": "+failure);
+                    if(found.size()>0 && inventory.findByProductCode(garments.get(found.size()-1).getProductCode())==null){
+                        failures.add("Reader "+reader+": garment "+(found.size()-1)+" was found by searching but not by its product code");
+                    }
+                    previous = found.size();
+                    searches.incrementAndGet();
+                }
+                return null;
+            }));
+        }
+
+        Random random = new Random(seed);
+        long start = System.nanoTime();
+        for(int added = 0; added < size; ){
+            int batch = random.nextInt(5)==0 ? 1+random.nextInt(3*Inventory.SEGMENT_SIZE) : 1+random.nextInt(8);
+            batch = Math.min(batch, size-added);
+            batchEnds.add(added+batch);
+            started.set(added+batch);
+            inventory.addGarments(garments.subList(added, added+batch));
+            added += batch;
+            published.set(added);
+        }
+        finished.countDown();
+        pool.shutdown();
+        for(Future<?> result: readerResults) result.get(1, TimeUnit.MINUTES);
+
+        int total = inventory.findMatch(everything).size();
+        if(total!=size) failures.add("Found "+total+" garments once every batch was added, expected "+size);
+        System.out.printf(Locale.ROOT, "%d garments added in %d ms, %d searches by %d readers, %d failures%n",
+                size, (System.nanoTime()-start)/1_000_000, searches.get(), readers, failures.size());
+        for(String failure: failures) System.out.println(failure);
+        if(!failures.isEmpty()) System.exit(1);
+    }
+
+    /**
+     * The purpose of this method is to check that a search saw the inventory as it was after one of the batches.
+     * @param garments every garment, in the order they are added.
+     * @param found the garments the search returned.
+     * @param lowest the number of garments published before the search started.
+     * @param highest the number of garments started by the time the search finished.
+     * @param previous the number of garments the reader's previous search returned.
+     * @param batchEnds the total number of garments after each batch.
+     * @return a description of what was wrong, or null if the search was consistent.
+     */
+    private static String check(List<Garment> garments, List<Garment> found, int lowest, int highest, int previous, Set<Integer> batchEnds){
+        int size = found.size();
+        if(size<lowest) return "found "+size+" garments, but "+lowest+" had been added before the search started";
+        if(size>highest) return "found "+size+" garments, but only "+highest+" had been started when the search finished";
+        if(size<previous) return "found "+size+" garments, fewer than the previous search's "+previous;
+        if(!batchEnds.contains(size)) return "found "+size+" garments, part of a batch";
+        // Sealed segments create new Garment objects for their matches, so garments are compared by product code.
+        for(int i = 0; i < size; i++){
+            if(found.get(i).getProductCode()!=garments.get(i).getProductCode()) return "garment "+i+" was \""+found.get(i).getName()+"\", expected \""+garments.get(i).getName()+"\"";
+        }
+        return null;
+    }
+
+    private static Map<String,String> parseOptions(String[] args){
+        Map<String,String> options = new HashMap<>();
+        for(String arg: args){
+            int equals = arg.indexOf('=');
+            if(equals<0) throw new IllegalArgumentException("Expected option=value but found \""+arg+"\"");
+            options.put(arg.substring(0, equals), arg.substring(equals+1));
+        }
+        return options;
+    }
+}
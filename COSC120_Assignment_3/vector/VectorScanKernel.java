@@ -0,0 +1,178 @@
+import jdk.incubator.vector.*;
+
+import java.util.Arrays;
+import java.util.function.IntPredicate;
+
+/**
+ * Checks the garments of a GarmentStore against a search many at a time, using the Vector API. Each step takes as many
+ * garments as a vector has int lanes, and records which of them are still matching as the bits of an int. The narrower
+ * columns (the byte enum ordinals and specified filters, and the short size masks) are widened to int lanes as they are
+ * loaded. The price range is tested first, then each filter in the matcher's order, each in its own pass over the steps,
+ * and a pass skips the steps in which no garment is left.
+ *
+ * Needs --add-modules jdk.incubator.vector both to compile and to run; ScanKernel loads it by name. Only the operations
+ * that JDK 17 compiles to vector instructions are used: VectorMask.toLong, for one, is not, so the matching lanes are
+ * found by reducing a vector of lane bits instead. Keeping each pass in a small method of its own keeps the compiler
+ * within its inlining limits, which a single loop testing every filter did not.
+ */
+final class VectorScanKernel implements ScanKernel {
+
+    private static final VectorSpecies<Integer> INTS = IntVector.SPECIES_PREFERRED;
+    // Species with the same number of lanes as INTS, for loading the narrower columns.
+    private static final VectorSpecies<Byte> BYTES = VectorSpecies.of(byte.class, VectorShape.forBitSize(INTS.length()*Byte.SIZE));
+    private static final VectorSpecies<Short> SHORTS = VectorSpecies.of(short.class, VectorShape.forBitSize(INTS.length()*Short.SIZE));
+    private static final IntVector ONES = IntVector.broadcast(INTS, 1);
+    // Lane i holds 1 << i.
+    private static final IntVector LANE_BITS = ONES.lanewise(VectorOperators.LSHL, IntVector.zero(INTS).addIndex(1));
+    // A brand is checked by comparing it with each brand id the search accepts, or with each it rejects, whichever are
+    // fewer. If both are more than this, the brand is looked up in a table afterwards, one matching garment at a time.
+    // (A gathering load could look them up in the vector passes, but JDK 17 can crash compiling one for AVX-512.)
+    private static final int MAX_BRAND_COMPARISONS = 8;
+
+    VectorScanKernel() {
+        // Shorter vectors have no species of bytes with as many lanes, and would gain little over checking one at a time.
+        // At most 32 lanes, so a step's lanes fit in the bits of an int.
+        if(INTS.length()<8 || INTS.length()>Integer.SIZE) throw new UnsupportedOperationException("Vectors of "+INTS.length()+" ints are not supported");
+    }
+
+    @Override
+    public int[] findMatchingRows(GarmentStore garments, GarmentMatcher matcher){
+        int size = garments.size();
+        long minCents = lowestAcceptedCents(matcher);
+        long maxCents = highestAcceptedCents(matcher);
+        if(minCents>maxCents || minCents>Integer.MAX_VALUE || maxCents<Integer.MIN_VALUE) return new int[0];
+        byte[] specified = garments.getSpecifiedColumn();
+        int[] brands = garments.getBrandColumn();
+        int[] acceptedBrands = brandIds(garments, matcher, true);
+        int[] rejectedBrands = brandIds(garments, matcher, false);
+        boolean checkBrandsAfterwards = Math.min(acceptedBrands.length, rejectedBrands.length)>MAX_BRAND_COMPARISONS;
+        boolean[] brandAccepted = new boolean[garments.getBrandIdBound()];
+        for(int id: acceptedBrands) brandAccepted[id] = true;
+
+        // The lanes of each step whose garments are still matching.
+        int[] steps = new int[size/INTS.length()];
+        testPrices(garments.getPriceColumn(), (int) Math.max(minCents, Integer.MIN_VALUE), (int) Math.min(maxCents, Integer.MAX_VALUE), steps);
+        for(Filter key: matcher.getOrder()){
+            int bit = 1 << key.ordinal();
+            switch (key) {
+                case SIZE -> testSizes(garments.getSizeColumn(), (int) matcher.getAcceptedMask(key), specified, bit, steps);
+                case BRAND -> {
+                    if(checkBrandsAfterwards) continue;
+                    if(acceptedBrands.length<=rejectedBrands.length) testBrands(brands, acceptedBrands, true, specified, bit, steps);
+                    else testBrands(brands, rejectedBrands, false, specified, bit, steps);
+                }
+                default -> testOrdinals(garments.getEnumColumn(key), (int) matcher.getAcceptedMask(key), specified, bit, steps);
+            }
+        }
+
+        int[] matchingRows = new int[size];
+        int count = 0;
+        for(int step = 0; step < steps.length; step++){
+            for(int lanes = steps[step]; lanes!=0; lanes &= lanes-1){
+                int row = step*INTS.length()+Integer.numberOfTrailingZeros(lanes);
+                if(!checkBrandsAfterwards || brands[row]<0 || brandAccepted[brands[row]]) matchingRows[count++] = row;
+            }
+        }
+        // The last few garments, fewer than a vector's worth, are checked one at a time.
+        IntPredicate matches = garments.rowMatcher(matcher);
+        for(int row = steps.length*INTS.length(); row < size; row++) if(matches.test(row)) matchingRows[count++] = row;
+        return Arrays.copyOf(matchingRows, count);
+    }
+
+    private static int lanesOf(VectorMask<Integer> mask){
+        return LANE_BITS.blend(0, mask.not()).reduceLanes(VectorOperators.OR);
+    }
+
+    private static VectorMask<Integer> unspecified(byte[] specified, int base, int bit){
+        return ((IntVector) ByteVector.fromArray(BYTES, specified, base).castShape(INTS, 0)).and(bit).compare(VectorOperators.EQ, 0);
+    }
+
+    private static void testPrices(int[] prices, int lowest, int highest, int[] steps){
+        for(int step = 0; step < steps.length; step++){
+            IntVector price = IntVector.fromArray(INTS, prices, step*INTS.length());
+            steps[step] = lanesOf(price.compare(VectorOperators.GE, lowest).and(price.compare(VectorOperators.LE, highest)));
+        }
+    }
+
+    private static void testOrdinals(byte[] ordinals, int acceptedMask, byte[] specified, int bit, int[] steps){
+        for(int step = 0; step < steps.length; step++){
+            if(steps[step]==0) continue;
+            int base = step*INTS.length();
+            VectorMask<Integer> accepted = ONES.lanewise(VectorOperators.LSHL, ByteVector.fromArray(BYTES, ordinals, base).castShape(INTS, 0))
+                    .and(acceptedMask).compare(VectorOperators.NE, 0);
+            steps[step] &= lanesOf(accepted.or(unspecified(specified, base, bit)));
+        }
+    }
+
+    private static void testSizes(short[] sizes, int acceptedMask, byte[] specified, int bit, int[] steps){
+        for(int step = 0; step < steps.length; step++){
+            if(steps[step]==0) continue;
+            int base = step*INTS.length();
+            VectorMask<Integer> accepted = ((IntVector) ShortVector.fromArray(SHORTS, sizes, base).castShape(INTS, 0))
+                    .and(acceptedMask).compare(VectorOperators.NE, 0);
+            steps[step] &= lanesOf(accepted.or(unspecified(specified, base, bit)));
+        }
+    }
+
+    /**
+     * @param brands the brand column, -1 for a garment without a brand id, which counts as accepted.
+     * @param ids the ids to compare with.
+     * @param accepted true if the ids are the accepted ones, false if they are the rejected ones.
+     */
+    private static void testBrands(int[] brands, int[] ids, boolean accepted, byte[] specified, int bit, int[] steps){
+        for(int step = 0; step < steps.length; step++){
+            if(steps[step]==0) continue;
+            int base = step*INTS.length();
+            IntVector brand = IntVector.fromArray(INTS, brands, base);
+            IntVector listed = IntVector.zero(INTS);
+            for(int id: ids) listed = listed.blend(1, brand.compare(VectorOperators.EQ, id));
+            VectorMask<Integer> acceptedLanes = listed.compare(accepted ? VectorOperators.NE : VectorOperators.EQ, 0);
+            // A garment without a brand id is never among the ids, and is accepted.
+            steps[step] &= lanesOf(acceptedLanes.or(brand.compare(VectorOperators.LT, 0)).or(unspecified(specified, base, bit)));
+        }
+    }
+
+    /**
+     * The purpose of this method is to list the brand ids held in a store that a search accepts, or that it rejects.
+     * @param garments the store.
+     * @param matcher the compiled search.
+     * @param accepted true to list the accepted ids, false to list the rejected ones.
+     * @return the ids, from 0 up to the store's brand id bound.
+     */
+    private static int[] brandIds(GarmentStore garments, GarmentMatcher matcher, boolean accepted){
+        int[] ids = new int[garments.getBrandIdBound()];
+        int count = 0;
+        for(int id = 0; id < ids.length; id++) if(matcher.acceptsBrandId(id)==accepted) ids[count++] = id;
+        return Arrays.copyOf(ids, count);
+    }
+
+    /**
+     * The purpose of this method is to convert the lower end of the search's price range to cents, giving exactly the
+     * same answer as comparing a price in cents, divided by 100, with the range.
+     * @param matcher the compiled search.
+     * @return the lowest price in cents the search accepts.
+     */
+    private static long lowestAcceptedCents(GarmentMatcher matcher){
+        double minPrice = matcher.getMinPrice();
+        if(Double.isNaN(minPrice) || minPrice>Integer.MAX_VALUE/100.0) return Long.MAX_VALUE;
+        if(minPrice<Integer.MIN_VALUE/100.0) return Long.MIN_VALUE;
+        long cents = (long) Math.ceil(minPrice*100);
+        while((cents-1)/100.0>=minPrice) cents--;
+        while(cents/100.0<minPrice) cents++;
+        return cents;
+    }
+
+    /**
+     * @param matcher the compiled search.
+     * @return the highest price in cents the search accepts.
+     */
+    private static long highestAcceptedCents(GarmentMatcher matcher){
+        double maxPrice = matcher.getMaxPrice();
+        if(Double.isNaN(maxPrice) || maxPrice<Integer.MIN_VALUE/100.0) return Long.MIN_VALUE;
+        if(maxPrice>Integer.MAX_VALUE/100.0) return Long.MAX_VALUE;
+        long cents = (long) Math.floor(maxPrice*100);
+        while((cents+1)/100.0<=maxPrice) cents++;
+        while(cents/100.0>maxPrice) cents--;
+        return cents;
+    }
+}